@@ -0,0 +1,65 @@
+package gg.bayes.challenge.benchmark;
+
+import gg.bayes.challenge.DotaChallengeApplication;
+import gg.bayes.challenge.service.parser.TimestampDecoder;
+import org.apache.commons.io.IOUtils;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+final class BenchmarkSupport {
+    static final String COMBATLOG_FILE_1 = "/data/combatlog_1.log.txt";
+    static final String COMBATLOG_FILE_2 = "/data/combatlog_2.log.txt";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Starts the application without the web server. The properties ({@code name=value}) are passed as command line
+     * arguments, so they take precedence over application.yml.
+     */
+    static ConfigurableApplicationContext startApplication(String... properties) {
+        return new SpringApplicationBuilder(DotaChallengeApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties("logging.level.gg.bayes=INFO", "logging.level.org.hibernate=WARN")
+                .run(Stream.of(properties).map(property -> "--" + property).toArray(String[]::new));
+    }
+
+    static String sampleLog(String file) {
+        try {
+            return IOUtils.resourceToString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Concatenates {@code factor} copies of the log, each one shifted in time to start after the previous one ends, so
+     * the result reads like a single long match.
+     */
+    static byte[] scale(String combatLog, int factor) {
+        String[] lines = combatLog.split("\\r?\\n");
+        long duration = Stream.of(lines).mapToLong(TimestampDecoder::decode).max().orElse(0) + 1000;
+        StringBuilder scaled = new StringBuilder(combatLog.length() * factor);
+        for (int copy = 0; copy < factor; copy++) {
+            for (String line : lines) {
+                long timestamp = TimestampDecoder.decode(line);
+                if (timestamp == TimestampDecoder.MALFORMED) {
+                    scaled.append(line);
+                } else {
+                    long shifted = timestamp + copy * duration;
+                    scaled.append(String.format("[%02d:%02d:%02d.%03d]", shifted / 3_600_000, shifted / 60_000 % 60,
+                            shifted / 1000 % 60, shifted % 1000)).append(line, TimestampDecoder.LENGTH, line.length());
+                }
+                scaled.append('\n');
+            }
+        }
+        return scaled.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,70 @@
+package gg.bayes.challenge.benchmark;
+
+import gg.bayes.challenge.service.CombatLogParserService;
+import gg.bayes.challenge.service.MatchService;
+import gg.bayes.challenge.support.CombatLogGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full {@link CombatLogParserService#parseAndSave} per store, of the first sample log and copies of it scaled 10 and
+ * 100 times, and of generated logs of the same sizes. Every ingested match is deleted again outside of the
+ * measurement, so the database does not grow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IngestionBenchmark {
+
+    @Param({"jpa", "columnar"})
+    private String store;
+
+    @Param({"1", "10", "100"})
+    private int scale;
+
+    @Param({"sample", "synthetic"})
+    private String source;
+
+    private ConfigurableApplicationContext context;
+    private CombatLogParserService combatLogParserService;
+    private MatchService matchService;
+    private byte[] combatLog;
+    private Long matchId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkSupport.startApplication("dota.store=" + store);
+        combatLogParserService = context.getBean(CombatLogParserService.class);
+        matchService = context.getBean(MatchService.class);
+        combatLog = source.equals("sample")
+                ? BenchmarkSupport.scale(BenchmarkSupport.sampleLog(BenchmarkSupport.COMBATLOG_FILE_1), scale)
+                : new CombatLogGenerator(42).generate(scale * 6000).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteMatch() {
+        if (matchId != null) {
+            matchService.deleteMatch(matchId);
+            matchId = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Long parseAndSave() throws IOException {
+        matchId = combatLogParserService.parseAndSave(new ByteArrayInputStream(combatLog));
+        return matchId;
+    }
+}
@@ -0,0 +1,55 @@
+package gg.bayes.challenge.benchmark;
+
+import gg.bayes.challenge.service.parser.CombatLogEvent;
+import gg.bayes.challenge.service.parser.CombatLogLineParser;
+import gg.bayes.challenge.service.parser.NameDictionary;
+import gg.bayes.challenge.service.parser.TimestampDecoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of classifying and tokenizing a single line, per kind of line, and of decoding its timestamp.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineParserBenchmark {
+    private static final Map<String, String> LINES = Map.of(
+            "item", "[00:08:46.693] npc_dota_hero_snapfire buys item item_clarity",
+            "kill", "[00:11:17.489] npc_dota_hero_snapfire is killed by npc_dota_hero_mars",
+            "spell", "[00:10:55.928] npc_dota_hero_bane casts ability bane_brain_sap (lvl 1) on npc_dota_hero_puck",
+            "damage", "[00:10:42.031] npc_dota_hero_bane hits npc_dota_hero_abyssal_underlord with dota_unknown "
+                    + "for 51 damage (740->689)",
+            "creep", "[00:10:42.164] npc_dota_creep_goodguys_melee hits npc_dota_hero_abyssal_underlord with "
+                    + "dota_unknown for 26 damage (689->663)",
+            "noise", "[00:00:04.999] game state is now 2");
+
+    @Param({"item", "kill", "spell", "damage", "creep", "noise"})
+    private String kind;
+
+    private String line;
+    private CombatLogLineParser parser;
+    private CombatLogEvent event;
+
+    @Setup
+    public void setUp() {
+        line = LINES.get(kind);
+        parser = new CombatLogLineParser(new NameDictionary());
+        event = new CombatLogEvent();
+    }
+
+    @Benchmark
+    public boolean parseLine() {
+        return parser.parse(line, event);
+    }
+
+    @Benchmark
+    public long decodeTimestamp() {
+        return TimestampDecoder.decode(line);
+    }
+}
@@ -0,0 +1,76 @@
+package gg.bayes.challenge.benchmark;
+
+import gg.bayes.challenge.rest.model.HeroDamage;
+import gg.bayes.challenge.rest.model.HeroItem;
+import gg.bayes.challenge.rest.model.HeroKills;
+import gg.bayes.challenge.rest.model.HeroSpells;
+import gg.bayes.challenge.service.CombatLogParserService;
+import gg.bayes.challenge.service.MatchService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The aggregation behind each query endpoint, below the response cache, for the first sample log ingested at the given
+ * scale. {@code jpa} reads the rollup tables, {@code jpa-aggregates} aggregates the raw entries in SQL and
+ * {@code columnar} scans the in-memory columns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+    private static final String HERO = "mars";
+
+    @Param({"jpa", "jpa-aggregates", "columnar"})
+    private String backend;
+
+    @Param({"1", "10"})
+    private int scale;
+
+    private ConfigurableApplicationContext context;
+    private MatchService matchService;
+    private Long matchId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = BenchmarkSupport.startApplication(
+                "dota.store=" + (backend.equals("columnar") ? "columnar" : "jpa"),
+                "dota.ingest.rollups=" + backend.equals("jpa"));
+        matchService = context.getBean(MatchService.class);
+        byte[] combatLog = BenchmarkSupport.scale(BenchmarkSupport.sampleLog(BenchmarkSupport.COMBATLOG_FILE_1), scale);
+        matchId = context.getBean(CombatLogParserService.class).parseAndSave(new ByteArrayInputStream(combatLog));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<List<HeroKills>> heroKills() {
+        return matchService.getHeroKills(matchId);
+    }
+
+    @Benchmark
+    public Optional<List<HeroItem>> heroItems() {
+        return matchService.getHeroItems(matchId, HERO);
+    }
+
+    @Benchmark
+    public Optional<List<HeroSpells>> heroSpells() {
+        return matchService.getHeroSpells(matchId, HERO);
+    }
+
+    @Benchmark
+    public Optional<List<HeroDamage>> heroDamage() {
+        return matchService.getHeroDamages(matchId, HERO);
+    }
+}
@@ -0,0 +1,96 @@
+package gg.bayes.challenge.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+
+@Getter
+@Setter
+@Validated
+@ConfigurationProperties(prefix = "dota.ingest")
+public class IngestionProperties {
+
+    /**
+     * Number of parsed entries flushed to the database at once. Hibernate sends each flush as a single JDBC batch, see
+     * {@code hibernate.jdbc.batch_size} in application.yml.
+     */
+    @Min(1)
+    private int batchSize = 500;
+
+    /**
+     * Whether per hero kills, spell casts and damage are rolled up into summary tables while a log is ingested. When
+     * disabled, ingestion only stores the raw entries and the read endpoints aggregate them in SQL instead.
+     */
+    private boolean rollups = true;
+
+    /**
+     * Number of threads parsing a single log. With {@code 1} the log is parsed line by line on the request thread,
+     * otherwise it is split into line aligned chunks that are parsed concurrently, see
+     * {@link gg.bayes.challenge.service.parser.ChunkedCombatLogParser}.
+     */
+    @Min(1)
+    private int parallelism = 1;
+
+    /**
+     * Approximate size in bytes of the chunks a log is split into when {@link #parallelism} is above {@code 1}. A
+     * chunk always ends at a line end, so it grows past this size if a single line is longer.
+     */
+    @Min(1)
+    private int chunkSize = 256 * 1024;
+
+    /**
+     * Number of threads ingesting the logs uploaded in async mode.
+     */
+    @Min(1)
+    private int workers = 2;
+
+    /**
+     * Number of async uploads that may wait for a free worker. Further uploads are refused until the queue drains.
+     */
+    @Min(1)
+    private int queueCapacity = 16;
+
+    /**
+     * Number of threads parsing the logs of a bulk upload, each log on its own thread.
+     */
+    @Min(1)
+    private int bulkParallelism = 4;
+
+    /**
+     * Number of logs of a bulk upload that are parsed together and then stored in one transaction, sharing JDBC
+     * batches.
+     */
+    @Min(1)
+    private int bulkGroupSize = 16;
+
+    /**
+     * Maximum combined size in bytes of the logs of a bulk upload group. Bounds the parsed events held in memory at
+     * once; a log larger than this is parsed while it is stored, on its own.
+     */
+    @Min(1)
+    private long bulkGroupBytes = 32L * 1024 * 1024;
+
+    /**
+     * Whether an upload of a combat log that was already ingested returns the existing match instead of parsing it
+     * again. Uploads are recognized by the SHA-256 hash of their decoded content.
+     */
+    private boolean deduplicate = true;
+
+    /**
+     * Maximum size in bytes of an uploaded combat log, after its {@code Content-Encoding} is decoded. Larger uploads
+     * are refused with 413 as soon as the limit is read past, so a small compressed body can not fill the disk or the
+     * store.
+     */
+    @Min(1)
+    private long maxBytes = 256L * 1024 * 1024;
+
+    /**
+     * Maximum length in bytes of a line of a live match segment. Longer lines are skipped, so a segment without line
+     * ends can not grow the line kept between segments without bound.
+     */
+    @Min(1)
+    private int maxLineLength = 64 * 1024;
+}
@@ -0,0 +1,21 @@
+package gg.bayes.challenge.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+
+@Getter
+@Setter
+@Validated
+@ConfigurationProperties(prefix = "dota.leaderboard")
+public class LeaderboardProperties {
+
+    /**
+     * Largest number of entries a leaderboard request may ask for.
+     */
+    @Min(1)
+    private int maximumLimit = 100;
+}
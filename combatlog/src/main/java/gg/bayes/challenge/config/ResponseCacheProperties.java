@@ -0,0 +1,29 @@
+package gg.bayes.challenge.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.time.Duration;
+
+@Getter
+@Setter
+@Validated
+@ConfigurationProperties(prefix = "dota.cache")
+public class ResponseCacheProperties {
+
+    /**
+     * Maximum number of cached responses, {@code 0} disables the cache.
+     */
+    @Min(0)
+    private long maximumSize = 10_000;
+
+    /**
+     * How long a response stays cached after it was computed.
+     */
+    @NotNull
+    private Duration ttl = Duration.ofMinutes(10);
+}
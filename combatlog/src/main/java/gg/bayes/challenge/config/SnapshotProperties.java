@@ -0,0 +1,21 @@
+package gg.bayes.challenge.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.nio.file.Path;
+
+@Getter
+@Setter
+@Validated
+@ConfigurationProperties(prefix = "dota.snapshot")
+public class SnapshotProperties {
+
+    /**
+     * Directory the columnar store writes a binary snapshot of every match to, and loads the snapshots from at
+     * startup. Matches are only kept in memory when unset.
+     */
+    private Path directory;
+}
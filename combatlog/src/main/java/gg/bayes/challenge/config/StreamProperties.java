@@ -0,0 +1,36 @@
+package gg.bayes.challenge.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.time.Duration;
+
+@Getter
+@Setter
+@Validated
+@ConfigurationProperties(prefix = "dota.stream")
+public class StreamProperties {
+
+    /**
+     * Minimum time between two updates sent to the same subscriber. The deltas of everything appended in between are
+     * merged into one update.
+     */
+    @NotNull
+    private Duration interval = Duration.ofMillis(500);
+
+    /**
+     * How long a subscription stays open before the client has to reconnect.
+     */
+    @NotNull
+    private Duration timeout = Duration.ofMinutes(30);
+
+    /**
+     * Number of threads sending updates to the subscribers.
+     */
+    @Min(1)
+    private int senders = 2;
+}
@@ -1,12 +1,20 @@
 package gg.bayes.challenge.config;
 
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfoHandlerMapping;
 import springfox.documentation.builders.PathSelectors;
 import springfox.documentation.builders.RequestHandlerSelectors;
 import springfox.documentation.spi.DocumentationType;
 import springfox.documentation.spring.web.plugins.Docket;
+import springfox.documentation.spring.web.plugins.WebFluxRequestHandlerProvider;
+import springfox.documentation.spring.web.plugins.WebMvcRequestHandlerProvider;
 
+import java.lang.reflect.Field;
+import java.util.List;
 import java.util.function.Predicate;
 
 @Configuration
@@ -21,4 +29,35 @@ public class SwaggerConfig {
                 .build();
     }
 
+    /**
+     * Springfox only understands handler mappings matching with the ant path matcher, but the actuator endpoints are
+     * always mapped with path patterns. Hides those mappings from springfox, they are not documented anyway.
+     */
+    @Bean
+    public static BeanPostProcessor springfoxHandlerProviderBeanPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                if (bean instanceof WebMvcRequestHandlerProvider || bean instanceof WebFluxRequestHandlerProvider) {
+                    removePathPatternMappings(bean);
+                }
+                return bean;
+            }
+
+            @SuppressWarnings("unchecked")
+            private void removePathPatternMappings(Object bean) {
+                Field field = ReflectionUtils.findField(bean.getClass(), "handlerMappings");
+                if (field == null) {
+                    return;
+                }
+                ReflectionUtils.makeAccessible(field);
+                List<RequestMappingInfoHandlerMapping> mappings =
+                        (List<RequestMappingInfoHandlerMapping>) ReflectionUtils.getField(field, bean);
+                if (mappings != null) {
+                    mappings.removeIf(mapping -> mapping.getPatternParser() != null);
+                }
+            }
+        };
+    }
+
 }
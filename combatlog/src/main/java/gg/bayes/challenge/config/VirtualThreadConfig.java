@@ -0,0 +1,39 @@
+package gg.bayes.challenge.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs every Tomcat request on its own virtual thread instead of the bounded platform thread pool, so requests
+ * blocked on JDBC or on the network do not hold a scarce worker thread. Enabled with {@code dota.web.virtual-threads}.
+ * <p>
+ * The application is built for Java 11, so the executor is looked up reflectively; enabling the option on a JDK
+ * without virtual threads (before 21) fails the startup.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "dota.web.virtual-threads", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        log.info("Serving requests on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("dota.web.virtual-threads requires Java 21 or later, running on "
+                    + System.getProperty("java.version"), e);
+        }
+    }
+}
@@ -9,7 +9,14 @@ import javax.validation.constraints.NotNull;
 @Getter
 @Setter
 @Entity
-@Table(name = "dota_combat_log")
+@Table(
+        name = "dota_combat_log",
+        indexes = {
+                @Index(name = "dota_combat_log_match_type_actor_idx", columnList = "match_id, entry_type, actor_id"),
+                @Index(name = "dota_combat_log_match_type_target_idx", columnList = "match_id, entry_type, target_id"),
+                @Index(name = "dota_combat_log_match_timestamp_idx", columnList = "match_id, entry_timestamp")
+        }
+)
 public class CombatLogEntryEntity {
 
     @GeneratedValue(
@@ -19,14 +26,14 @@ public class CombatLogEntryEntity {
     @SequenceGenerator(
             name = "dota_combat_log_sequence_generator",
             sequenceName = "dota_combat_log_sequence",
-            allocationSize = 1
+            allocationSize = 500
     )
 
     @Id
     @Column(name = "id")
     private Long id;
 
-    @ManyToOne(optional = false)
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
     private MatchEntity match;
 
     @NotNull
@@ -38,20 +45,38 @@ public class CombatLogEntryEntity {
     @Enumerated(EnumType.STRING)
     private Type type;
 
-    @Column(name = "actor")
-    private String actor;
+    // Names are written as their NameDictionary ids. The read-only associations only declare the foreign keys into
+    // dota_name and serve the joins of the aggregate queries.
+    @Column(name = "actor_id")
+    private Integer actorId;
 
-    @Column(name = "target")
-    private String target;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "actor_id", insertable = false, updatable = false)
+    private NameEntity actor;
 
-    @Column(name = "ability")
-    private String ability;
+    @Column(name = "target_id")
+    private Integer targetId;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "target_id", insertable = false, updatable = false)
+    private NameEntity target;
+
+    @Column(name = "ability_id")
+    private Integer abilityId;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "ability_id", insertable = false, updatable = false)
+    private NameEntity ability;
 
     @Column(name = "ability_level")
     private Integer abilityLevel;
 
-    @Column(name = "item")
-    private String item;
+    @Column(name = "item_id")
+    private Integer itemId;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "item_id", insertable = false, updatable = false)
+    private NameEntity item;
 
     @Column(name = "damage")
     private Integer damage;
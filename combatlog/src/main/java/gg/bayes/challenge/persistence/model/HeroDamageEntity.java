@@ -0,0 +1,55 @@
+package gg.bayes.challenge.persistence.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Damage one hero did to another in a match, computed once at ingestion time.
+ */
+@Getter
+@Setter
+@Entity
+@Table(
+        name = "dota_hero_damage",
+        indexes = {
+                @Index(name = "dota_hero_damage_match_actor_idx", columnList = "match_id, actor"),
+                @Index(name = "dota_hero_damage_match_target_idx", columnList = "match_id, target")
+        }
+)
+public class HeroDamageEntity {
+
+    @GeneratedValue(
+            strategy = GenerationType.SEQUENCE,
+            generator = "dota_hero_damage_sequence_generator"
+    )
+    @SequenceGenerator(
+            name = "dota_hero_damage_sequence_generator",
+            sequenceName = "dota_hero_damage_sequence",
+            allocationSize = 50
+    )
+    @Id
+    @Column(name = "id")
+    private Long id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    private MatchEntity match;
+
+    @NotNull
+    @Column(name = "actor")
+    private String actor;
+
+    @NotNull
+    @Column(name = "target")
+    private String target;
+
+    @NotNull
+    @Column(name = "damage_instances")
+    private Integer damageInstances;
+
+    @NotNull
+    @Column(name = "total_damage")
+    private Integer totalDamage;
+}
@@ -0,0 +1,44 @@
+package gg.bayes.challenge.persistence.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Number of kills a hero made in a match, computed once at ingestion time.
+ */
+@Getter
+@Setter
+@Entity
+@Table(
+        name = "dota_hero_kills",
+        indexes = @Index(name = "dota_hero_kills_match_idx", columnList = "match_id")
+)
+public class HeroKillsEntity {
+
+    @GeneratedValue(
+            strategy = GenerationType.SEQUENCE,
+            generator = "dota_hero_kills_sequence_generator"
+    )
+    @SequenceGenerator(
+            name = "dota_hero_kills_sequence_generator",
+            sequenceName = "dota_hero_kills_sequence",
+            allocationSize = 50
+    )
+    @Id
+    @Column(name = "id")
+    private Long id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    private MatchEntity match;
+
+    @NotNull
+    @Column(name = "hero")
+    private String hero;
+
+    @NotNull
+    @Column(name = "kills")
+    private Integer kills;
+}
@@ -0,0 +1,48 @@
+package gg.bayes.challenge.persistence.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Number of times a hero cast a spell in a match, computed once at ingestion time.
+ */
+@Getter
+@Setter
+@Entity
+@Table(
+        name = "dota_hero_spells",
+        indexes = @Index(name = "dota_hero_spells_match_hero_idx", columnList = "match_id, hero")
+)
+public class HeroSpellCastsEntity {
+
+    @GeneratedValue(
+            strategy = GenerationType.SEQUENCE,
+            generator = "dota_hero_spells_sequence_generator"
+    )
+    @SequenceGenerator(
+            name = "dota_hero_spells_sequence_generator",
+            sequenceName = "dota_hero_spells_sequence",
+            allocationSize = 50
+    )
+    @Id
+    @Column(name = "id")
+    private Long id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    private MatchEntity match;
+
+    @NotNull
+    @Column(name = "hero")
+    private String hero;
+
+    @NotNull
+    @Column(name = "spell")
+    private String spell;
+
+    @NotNull
+    @Column(name = "casts")
+    private Integer casts;
+}
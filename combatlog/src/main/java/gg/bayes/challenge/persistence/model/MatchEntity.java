@@ -4,13 +4,14 @@ import lombok.Getter;
 import lombok.Setter;
 
 import javax.persistence.*;
-import java.util.HashSet;
-import java.util.Set;
 
 @Getter
 @Setter
 @Entity
-@Table(name = "dota_match")
+@Table(
+        name = "dota_match",
+        indexes = @Index(name = "dota_match_content_hash_idx", columnList = "content_hash")
+)
 public class MatchEntity {
 
     @GeneratedValue(
@@ -20,12 +21,16 @@ public class MatchEntity {
     @SequenceGenerator(
             name = "dota_match_sequence_generator",
             sequenceName = "dota_match_sequence",
-            allocationSize = 1
+            allocationSize = 50
     )
     @Id
     @Column(name = "id")
     private Long id;
 
-    @OneToMany(mappedBy = "match", cascade = CascadeType.PERSIST)
-    private Set<CombatLogEntryEntity> combatLogEntries = new HashSet<>();
+    /**
+     * Hex encoded SHA-256 hash of the combat log the match was parsed from, {@code null} if it was not uploaded as a
+     * whole or has been appended to since.
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package gg.bayes.challenge.persistence.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Lookup table for hero, ability and item names, referenced by {@link CombatLogEntryEntity}. The id is the one assigned
+ * by {@link gg.bayes.challenge.service.parser.NameDictionary}, not generated by the database.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "dota_name")
+public class NameEntity {
+
+    @Id
+    @Column(name = "id")
+    private Integer id;
+
+    @NotNull
+    @Column(name = "name", unique = true)
+    private String name;
+
+    public NameEntity(Integer id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+}
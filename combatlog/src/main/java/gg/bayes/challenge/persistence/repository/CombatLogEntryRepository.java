@@ -1,14 +1,127 @@
 package gg.bayes.challenge.persistence.repository;
 
 import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
-import gg.bayes.challenge.persistence.model.MatchEntity;
+import gg.bayes.challenge.rest.model.HeroDamage;
+import gg.bayes.challenge.rest.model.HeroItem;
+import gg.bayes.challenge.rest.model.HeroKills;
+import gg.bayes.challenge.rest.model.HeroSpells;
+import gg.bayes.challenge.rest.model.TimelineEvent;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.stream.Stream;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+/**
+ * Besides the entity access, offers aggregate queries that group and count in the database and only return the rows
+ * of the REST responses. They are served by the (match_id, entry_type, actor_id) and
+ * (match_id, entry_type, target_id) indexes; names are joined from {@code dota_name} by primary key.
+ * <p>
+ * The {@code ...Between} variants only consider the entries with {@code from <= timestamp < to}. The timeline is read
+ * through the (match_id, entry_timestamp) index, so a window costs an index range scan over its own entries only.
+ */
 @Repository
 public interface CombatLogEntryRepository extends JpaRepository<CombatLogEntryEntity, Long> {
-    List<CombatLogEntryEntity> findByMatchAndActor(MatchEntity match, String heroName);
+    String TIMELINE = "select new gg.bayes.challenge.rest.model.TimelineEvent(e.timestamp, e.type, a.name, t.name, "
+            + "s.name, e.abilityLevel, i.name, e.damage) "
+            + "from CombatLogEntryEntity e join e.actor a left join e.target t left join e.ability s "
+            + "left join e.item i where e.match.id = :matchId and e.timestamp >= :from and e.timestamp < :to "
+            + "order by e.timestamp, e.id";
+
+    String HERO_KILLED = "gg.bayes.challenge.persistence.model.CombatLogEntryEntity$Type.HERO_KILLED";
+
+    @Query("select new gg.bayes.challenge.rest.model.HeroItem(i.name, e.timestamp) "
+            + "from CombatLogEntryEntity e join e.item i where e.match.id = :matchId "
+            + "and e.type = gg.bayes.challenge.persistence.model.CombatLogEntryEntity$Type.ITEM_PURCHASED "
+            + "and e.actor.name = :hero order by e.timestamp")
+    List<HeroItem> findItemPurchases(@Param("matchId") Long matchId, @Param("hero") String hero);
+
+    /**
+     * Kills per hero, for every hero that acted or was targeted in the match, like the rollup. The heroes are found
+     * with the (match_id, ...) indexes, and their kills are counted by an index lookup each.
+     */
+    @Query("select new gg.bayes.challenge.rest.model.HeroKills(n.name, cast(count(k) as int)) from NameEntity n "
+            + "left join CombatLogEntryEntity k on k.actorId = n.id and k.match.id = :matchId "
+            + "and k.type = " + HERO_KILLED + " "
+            + "where n.id in (select e.actorId from CombatLogEntryEntity e where e.match.id = :matchId) "
+            + "or n.id in (select e.targetId from CombatLogEntryEntity e where e.match.id = :matchId) "
+            + "group by n.id, n.name order by count(k) desc, n.name")
+    List<HeroKills> countKills(@Param("matchId") Long matchId);
+
+    @Query("select new gg.bayes.challenge.rest.model.HeroSpells(s.name, cast(count(e) as int)) "
+            + "from CombatLogEntryEntity e join e.ability s where e.match.id = :matchId "
+            + "and e.type = gg.bayes.challenge.persistence.model.CombatLogEntryEntity$Type.SPELL_CAST "
+            + "and e.actor.name = :hero group by s.id, s.name order by count(e) desc, s.name")
+    List<HeroSpells> countSpellCasts(@Param("matchId") Long matchId, @Param("hero") String hero);
+
+    /**
+     * Damage the given hero dealt, grouped by the damaged hero.
+     */
+    @Query("select new gg.bayes.challenge.rest.model.HeroDamage(t.name, cast(count(e) as int), "
+            + "cast(sum(e.damage) as int)) "
+            + "from CombatLogEntryEntity e join e.target t where e.match.id = :matchId "
+            + "and e.type = gg.bayes.challenge.persistence.model.CombatLogEntryEntity$Type.DAMAGE_DONE "
+            + "and e.actor.name = :hero group by t.id, t.name order by sum(e.damage) desc, t.name")
+    List<HeroDamage> sumDamageDealt(@Param("matchId") Long matchId, @Param("hero") String hero);
+
+    @Query("select new gg.bayes.challenge.rest.model.HeroItem(i.name, e.timestamp) "
+            + "from CombatLogEntryEntity e join e.item i where e.match.id = :matchId "
+            + "and e.type = gg.bayes.challenge.persistence.model.CombatLogEntryEntity$Type.ITEM_PURCHASED "
+            + "and e.actor.name = :hero and e.timestamp >= :from and e.timestamp < :to order by e.timestamp")
+    List<HeroItem> findItemPurchasesBetween(@Param("matchId") Long matchId, @Param("hero") String hero,
+                                            @Param("from") long from, @Param("to") long to);
+
+    @Query("select new gg.bayes.challenge.rest.model.HeroKills(n.name, cast(count(k) as int)) from NameEntity n "
+            + "left join CombatLogEntryEntity k on k.actorId = n.id and k.match.id = :matchId "
+            + "and k.type = " + HERO_KILLED + " and k.timestamp >= :from and k.timestamp < :to "
+            + "where n.id in (select e.actorId from CombatLogEntryEntity e where e.match.id = :matchId "
+            + "and e.timestamp >= :from and e.timestamp < :to) "
+            + "or n.id in (select e.targetId from CombatLogEntryEntity e where e.match.id = :matchId "
+            + "and e.timestamp >= :from and e.timestamp < :to) "
+            + "group by n.id, n.name order by count(k) desc, n.name")
+    List<HeroKills> countKillsBetween(@Param("matchId") Long matchId,
+                                      @Param("from") long from, @Param("to") long to);
+
+    @Query("select new gg.bayes.challenge.rest.model.HeroSpells(s.name, cast(count(e) as int)) "
+            + "from CombatLogEntryEntity e join e.ability s where e.match.id = :matchId "
+            + "and e.type = gg.bayes.challenge.persistence.model.CombatLogEntryEntity$Type.SPELL_CAST "
+            + "and e.actor.name = :hero and e.timestamp >= :from and e.timestamp < :to "
+            + "group by s.id, s.name order by count(e) desc, s.name")
+    List<HeroSpells> countSpellCastsBetween(@Param("matchId") Long matchId, @Param("hero") String hero,
+                                            @Param("from") long from, @Param("to") long to);
+
+    @Query("select new gg.bayes.challenge.rest.model.HeroDamage(t.name, cast(count(e) as int), "
+            + "cast(sum(e.damage) as int)) "
+            + "from CombatLogEntryEntity e join e.target t where e.match.id = :matchId "
+            + "and e.type = gg.bayes.challenge.persistence.model.CombatLogEntryEntity$Type.DAMAGE_DONE "
+            + "and e.actor.name = :hero and e.timestamp >= :from and e.timestamp < :to "
+            + "group by t.id, t.name order by sum(e.damage) desc, t.name")
+    List<HeroDamage> sumDamageDealtBetween(@Param("matchId") Long matchId, @Param("hero") String hero,
+                                           @Param("from") long from, @Param("to") long to);
+
+    /**
+     * All events of the match in the window, in log order.
+     */
+    @Query(TIMELINE)
+    List<TimelineEvent> findTimeline(@Param("matchId") Long matchId, @Param("from") long from, @Param("to") long to);
+
+    /**
+     * Like {@link #findTimeline(Long, long, long)}, but the events are read as they are consumed. The stream must be
+     * consumed within a transaction and closed.
+     */
+    @Query(TIMELINE)
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    Stream<TimelineEvent> streamTimeline(@Param("matchId") Long matchId, @Param("from") long from,
+                                         @Param("to") long to);
 
+    @Modifying
+    @Query("delete from CombatLogEntryEntity e where e.match.id = :matchId")
+    int deleteByMatchId(@Param("matchId") Long matchId);
 }
@@ -0,0 +1,33 @@
+package gg.bayes.challenge.persistence.repository;
+
+import gg.bayes.challenge.persistence.model.HeroDamageEntity;
+import gg.bayes.challenge.rest.model.HeroDamage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface HeroDamageRepository extends JpaRepository<HeroDamageEntity, Long> {
+
+    /**
+     * Damage the given hero dealt, grouped by the damaged hero.
+     */
+    @Query("select new gg.bayes.challenge.rest.model.HeroDamage(d.target, d.damageInstances, d.totalDamage) "
+            + "from HeroDamageEntity d where d.match.id = :matchId and d.actor = :hero "
+            + "order by d.totalDamage desc, d.target")
+    List<HeroDamage> findDamageDealt(@Param("matchId") Long matchId, @Param("hero") String hero);
+
+    /**
+     * The rows of the match as entities, to be updated when events are appended to it.
+     */
+    @Query("select e from HeroDamageEntity e where e.match.id = :matchId")
+    List<HeroDamageEntity> findByMatchId(@Param("matchId") Long matchId);
+
+    @Modifying
+    @Query("delete from HeroDamageEntity e where e.match.id = :matchId")
+    int deleteByMatchId(@Param("matchId") Long matchId);
+}
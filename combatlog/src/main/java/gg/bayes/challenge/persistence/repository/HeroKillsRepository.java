@@ -0,0 +1,29 @@
+package gg.bayes.challenge.persistence.repository;
+
+import gg.bayes.challenge.persistence.model.HeroKillsEntity;
+import gg.bayes.challenge.rest.model.HeroKills;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface HeroKillsRepository extends JpaRepository<HeroKillsEntity, Long> {
+
+    @Query("select new gg.bayes.challenge.rest.model.HeroKills(k.hero, k.kills) from HeroKillsEntity k "
+            + "where k.match.id = :matchId order by k.kills desc, k.hero")
+    List<HeroKills> findHeroKills(@Param("matchId") Long matchId);
+
+    /**
+     * The rows of the match as entities, to be updated when events are appended to it.
+     */
+    @Query("select e from HeroKillsEntity e where e.match.id = :matchId")
+    List<HeroKillsEntity> findByMatchId(@Param("matchId") Long matchId);
+
+    @Modifying
+    @Query("delete from HeroKillsEntity e where e.match.id = :matchId")
+    int deleteByMatchId(@Param("matchId") Long matchId);
+}
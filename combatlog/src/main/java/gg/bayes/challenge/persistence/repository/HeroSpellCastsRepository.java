@@ -0,0 +1,29 @@
+package gg.bayes.challenge.persistence.repository;
+
+import gg.bayes.challenge.persistence.model.HeroSpellCastsEntity;
+import gg.bayes.challenge.rest.model.HeroSpells;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface HeroSpellCastsRepository extends JpaRepository<HeroSpellCastsEntity, Long> {
+
+    @Query("select new gg.bayes.challenge.rest.model.HeroSpells(s.spell, s.casts) from HeroSpellCastsEntity s "
+            + "where s.match.id = :matchId and s.hero = :hero order by s.casts desc, s.spell")
+    List<HeroSpells> findHeroSpells(@Param("matchId") Long matchId, @Param("hero") String hero);
+
+    /**
+     * The rows of the match as entities, to be updated when events are appended to it.
+     */
+    @Query("select e from HeroSpellCastsEntity e where e.match.id = :matchId")
+    List<HeroSpellCastsEntity> findByMatchId(@Param("matchId") Long matchId);
+
+    @Modifying
+    @Query("delete from HeroSpellCastsEntity e where e.match.id = :matchId")
+    int deleteByMatchId(@Param("matchId") Long matchId);
+}
@@ -2,8 +2,18 @@ package gg.bayes.challenge.persistence.repository;
 
 import gg.bayes.challenge.persistence.model.MatchEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface MatchRepository extends JpaRepository<MatchEntity, Long> {
+
+    @Query("select m.id from MatchEntity m where m.contentHash = :contentHash order by m.id")
+    List<Long> findIdsByContentHash(@Param("contentHash") String contentHash);
+
+    @Query("select m.id from MatchEntity m order by m.id")
+    List<Long> findAllIds();
 }
\ No newline at end of file
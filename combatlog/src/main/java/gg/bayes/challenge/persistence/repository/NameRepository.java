@@ -0,0 +1,13 @@
+package gg.bayes.challenge.persistence.repository;
+
+import gg.bayes.challenge.persistence.model.NameEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface NameRepository extends JpaRepository<NameEntity, Integer> {
+
+    List<NameEntity> findAllByOrderByIdAsc();
+}
@@ -0,0 +1,134 @@
+package gg.bayes.challenge.rest.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import gg.bayes.challenge.config.ResponseCacheProperties;
+import gg.bayes.challenge.service.store.TimeRange;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Value;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.UncheckedIOException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Serialized JSON responses of the match queries, keyed by match, hero, query and time range. Matches do not change
+ * once they are ingested, so an entry stays valid until it expires, is pushed out by newer entries, or its match is
+ * evicted with {@link #evictMatch(long)}. Size and time to live are configured with {@link ResponseCacheProperties}.
+ * <p>
+ * Each response carries a strong ETag computed from its bytes. Unknown matches are not cached, so a match that is
+ * ingested later is found right away.
+ * <p>
+ * Hits, misses, evictions and the size are published as the {@code cache.*} meters of the {@code match-responses}
+ * cache.
+ */
+@Component
+public class MatchResponseCache implements MeterBinder {
+    static final String CACHE_NAME = "match-responses";
+
+    private final Cache<Key, CachedResponse> cache;
+    private final ObjectMapper objectMapper;
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired
+    public MatchResponseCache(ResponseCacheProperties properties, ObjectMapper objectMapper) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .build();
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Returns the cached response, or runs the query and caches its serialized result.
+     *
+     * @param matchId  the match the query is about
+     * @param heroName the hero the query is about, {@code null} for match wide queries
+     * @param type     the query
+     * @param range    the window of the match the query is limited to
+     * @param query    computes the response, empty if the match does not exist
+     * @return the response, empty if the match does not exist
+     */
+    public Optional<CachedResponse> get(long matchId, String heroName, QueryType type, TimeRange range,
+                                        Supplier<Optional<?>> query) {
+        Key key = new Key(matchId, heroName, type, range);
+        CachedResponse cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long generation = evictions.get();
+        Optional<?> result = query.get();
+        if (result.isEmpty()) {
+            return Optional.empty();
+        }
+        CachedResponse response = serialize(result.get());
+        cache.put(key, response);
+        // the match may have been evicted while the query ran, do not keep what it returned
+        if (evictions.get() != generation) {
+            cache.invalidate(key);
+        }
+        return Optional.of(response);
+    }
+
+    /**
+     * Drops all cached responses of the match, to be called whenever it is modified or deleted.
+     */
+    public void evictMatch(long matchId) {
+        evictions.incrementAndGet();
+        cache.asMap().keySet().removeIf(key -> key.getMatchId() == matchId);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private CachedResponse serialize(Object body) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            return new CachedResponse(json, "\"" + DigestUtils.md5DigestAsHex(json) + "\"");
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public enum QueryType {
+        KILLS,
+        ITEMS,
+        SPELLS,
+        DAMAGE,
+        SUMMARY
+    }
+
+    @Value
+    public static class CachedResponse {
+        byte[] json;
+        String etag;
+    }
+
+    @Value
+    private static class Key {
+        long matchId;
+        String heroName;
+        QueryType type;
+        TimeRange range;
+    }
+}
@@ -0,0 +1,83 @@
+package gg.bayes.challenge.rest.controller;
+
+import gg.bayes.challenge.config.LeaderboardProperties;
+import gg.bayes.challenge.rest.model.LeaderboardEntry;
+import gg.bayes.challenge.service.LeaderboardService;
+import gg.bayes.challenge.service.LeaderboardService.Board;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/leaderboard")
+public class LeaderboardController {
+    private final LeaderboardService leaderboardService;
+    private final int maximumLimit;
+
+    @Autowired
+    public LeaderboardController(LeaderboardService leaderboardService, LeaderboardProperties leaderboardProperties) {
+        this.leaderboardService = leaderboardService;
+        this.maximumLimit = leaderboardProperties.getMaximumLimit();
+    }
+
+    /**
+     * Fetches the heroes with the most kills across all matches.
+     *
+     * @param limit the number of heroes to return
+     * @return a collection of {@link LeaderboardEntry}: heroes and their kill counts, most kills first
+     */
+    @GetMapping(
+            path = "kills",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<List<LeaderboardEntry>> getKills(
+            @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        return ResponseEntity.ok(leaderboardService.top(Board.KILLS, checkLimit(limit)));
+    }
+
+    /**
+     * Fetches the spells cast most often across all matches and heroes.
+     *
+     * @param limit the number of spells to return
+     * @return a collection of {@link LeaderboardEntry}: spells and their cast counts, most casts first
+     */
+    @GetMapping(
+            path = "spells",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<List<LeaderboardEntry>> getSpells(
+            @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        return ResponseEntity.ok(leaderboardService.top(Board.SPELLS, checkLimit(limit)));
+    }
+
+    /**
+     * Fetches the heroes that dealt the most damage to other heroes across all matches.
+     *
+     * @param limit the number of heroes to return
+     * @return a collection of {@link LeaderboardEntry}: heroes and their total damage dealt, most damage first
+     */
+    @GetMapping(
+            path = "damage",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<List<LeaderboardEntry>> getDamage(
+            @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        return ResponseEntity.ok(leaderboardService.top(Board.DAMAGE, checkLimit(limit)));
+    }
+
+    private int checkLimit(int limit) {
+        if (limit < 1 || limit > maximumLimit) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "The limit must be between 1 and " + maximumLimit);
+        }
+        return limit;
+    }
+}
@@ -1,30 +1,44 @@
 package gg.bayes.challenge.rest.controller;
 
-import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
-import gg.bayes.challenge.persistence.model.MatchEntity;
-import gg.bayes.challenge.persistence.repository.CombatLogEntryRepository;
-import gg.bayes.challenge.persistence.repository.MatchRepository;
+import gg.bayes.challenge.config.StreamProperties;
+import gg.bayes.challenge.rest.cache.MatchResponseCache;
+import gg.bayes.challenge.rest.cache.MatchResponseCache.CachedResponse;
+import gg.bayes.challenge.rest.cache.MatchResponseCache.QueryType;
+import gg.bayes.challenge.rest.model.BulkIngestionResult;
 import gg.bayes.challenge.rest.model.HeroDamage;
 import gg.bayes.challenge.rest.model.HeroItem;
 import gg.bayes.challenge.rest.model.HeroKills;
 import gg.bayes.challenge.rest.model.HeroSpells;
+import gg.bayes.challenge.rest.model.HeroSummary;
+import gg.bayes.challenge.rest.model.IngestionJob;
+import gg.bayes.challenge.rest.model.TimelineEvent;
+import gg.bayes.challenge.service.BulkIngestionService;
 import gg.bayes.challenge.service.CombatLogParserService;
+import gg.bayes.challenge.service.CombatLogTooLargeException;
+import gg.bayes.challenge.service.IngestionJobService;
+import gg.bayes.challenge.service.LiveIngestionService;
 import gg.bayes.challenge.service.MatchService;
+import gg.bayes.challenge.service.MatchUpdatePublisher;
+import gg.bayes.challenge.service.store.TimeRange;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.NotImplementedException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.server.ResponseStatusException;
 
-import javax.validation.constraints.NotBlank;
-import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @Slf4j
 @RestController
@@ -34,60 +48,228 @@ public class MatchController {
 
     private CombatLogParserService combatLogParserService;
     private MatchService matchService;
-    private CombatLogEntryRepository combatLogEntryRepository;
+    private IngestionJobService ingestionJobService;
+    private BulkIngestionService bulkIngestionService;
+    private LiveIngestionService liveIngestionService;
+    private MatchResponseCache responseCache;
+    private StreamProperties streamProperties;
 
     @Autowired
-    public MatchController(CombatLogParserService combatLogParserService, MatchService matchService, CombatLogEntryRepository combatLogEntryRepository) {
+    public MatchController(CombatLogParserService combatLogParserService, MatchService matchService,
+                           IngestionJobService ingestionJobService, BulkIngestionService bulkIngestionService,
+                           LiveIngestionService liveIngestionService, MatchResponseCache responseCache,
+                           StreamProperties streamProperties) {
        this.combatLogParserService = combatLogParserService;
        this.matchService = matchService;
-       this.combatLogEntryRepository = combatLogEntryRepository;
+       this.ingestionJobService = ingestionJobService;
+       this.bulkIngestionService = bulkIngestionService;
+       this.liveIngestionService = liveIngestionService;
+       this.responseCache = responseCache;
+       this.streamProperties = streamProperties;
     }
 
     /**
      * Ingests a DOTA combat log file, parses and persists relevant events data. All events are associated with the same
-     * match id.
+     * match id. The request body is spooled to a temporary file rather than buffered, so large logs are ingested with
+     * a bounded amount of memory. Bodies sent with {@code Content-Encoding: gzip} or {@code zstd} are decompressed on
+     * the fly, see {@link gg.bayes.challenge.rest.encoding.RequestDecompressionFilter}.
+     * <p>
+     * Uploading a log that was already ingested returns the id of its match without parsing it again, so a retried
+     * upload does not create a duplicate match.
      *
      * @param combatLog the content of the combat log file
-     * @return the match id associated with the parsed events
+     * @return the match id associated with the parsed events, or 413 if the decoded log is larger than
+     * {@code dota.ingest.max-bytes}
      */
     @PostMapping(consumes = MediaType.TEXT_PLAIN_VALUE)
-    public ResponseEntity<Long> ingestCombatLog(@RequestBody @NotBlank String combatLog) {
-        //throw new NotImplementedException("TODO: implement");
-        Long matchId = combatLogParserService.parseAndSave(combatLog);
-        return ResponseEntity.ok().body(matchId);
+    public ResponseEntity<Long> ingestCombatLog(InputStream combatLog) throws IOException {
+        try {
+            Long matchId = combatLogParserService.ingest(combatLog);
+            return ResponseEntity.ok().body(matchId);
+        } catch (CombatLogTooLargeException e) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Queues a DOTA combat log for ingestion in the background and returns right after the upload is received. The
+     * returned job is polled with {@link #getIngestionJob(Long)} until it is done and carries the match id.
+     *
+     * @param combatLog the content of the combat log file
+     * @return the queued ingestion job, 400 if the compressed body is malformed, 413 if the decoded log is too large,
+     * or 429 if the ingestion queue is full
+     */
+    @PostMapping(params = "async=true", consumes = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<IngestionJob> ingestCombatLogAsync(InputStream combatLog) throws IOException {
+        try {
+            IngestionJob job = ingestionJobService.submit(combatLog);
+            return ResponseEntity.accepted().location(URI.create("/api/match/jobs/" + job.getId())).body(job);
+        } catch (CombatLogTooLargeException e) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Ingests many DOTA combat log files at once, each as its own match. The logs are parsed concurrently and stored in
+     * shared batches. A log that fails does not fail the others, its result carries the error instead of a match id.
+     *
+     * @param files the combat log files, as the {@code files} parts of the form
+     * @return one result per file, in upload order
+     */
+    @PostMapping(path = "bulk", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<BulkIngestionResult>> ingestCombatLogs(
+            @RequestParam("files") List<MultipartFile> files) throws IOException {
+        List<BulkIngestionService.Upload> uploads = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            uploads.add(new BulkIngestionService.Upload(file.getOriginalFilename(), file, file.getSize()));
+        }
+        return ResponseEntity.ok(bulkIngestionService.ingest(uploads));
+    }
+
+    /**
+     * Ingests every file of a zip archive as its own match, like {@link #ingestCombatLogs(List)}.
+     *
+     * @param archive the zip archive of combat log files
+     * @return one result per file, in archive order, or 400 if the archive holds no file
+     */
+    @PostMapping(path = "bulk", consumes = "application/zip", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<BulkIngestionResult>> ingestCombatLogArchive(InputStream archive) throws IOException {
+        List<BulkIngestionResult> results = bulkIngestionService.ingestZip(archive);
+        if (results.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The archive holds no combat log");
+        }
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * Starts a match that is still being played. Its combat log is sent in segments with
+     * {@link #appendCombatLog(Long, boolean, InputStream)}, and its statistics can be queried all along.
+     *
+     * @return the id of the new, empty match
+     */
+    @PostMapping(path = "live")
+    public ResponseEntity<Long> startLiveMatch() throws IOException {
+        return ResponseEntity.ok(liveIngestionService.start());
+    }
+
+    /**
+     * Appends the next segment of the combat log of a match, parsed and stored like a complete log. The segment may end
+     * in the middle of a line, the line is completed by the next segment.
+     *
+     * @param matchId   the match identifier
+     * @param complete  whether this is the last segment of the match
+     * @param segment   the next part of the combat log
+     * @return 204, or 404 if the match does not exist
+     */
+    @PostMapping(path = "{matchId}/append", consumes = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<Void> appendCombatLog(
+            @PathVariable("matchId") Long matchId,
+            @RequestParam(name = "complete", defaultValue = "false") boolean complete,
+            InputStream segment) throws IOException {
+        boolean appended;
+        try {
+            appended = liveIngestionService.append(matchId, segment, complete);
+        } finally {
+            responseCache.evictMatch(matchId);
+        }
+        if (!appended) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Match not found with id " + matchId);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Streams the changes of a match as server-sent events, instead of polling the query endpoints. The stream starts
+     * with a {@code snapshot} event holding the current statistics, followed by {@code delta} events with the kills,
+     * spell casts, damage and item purchases of the segments appended since, see {@link MatchUpdatePublisher}. A
+     * {@code complete} event ends the stream once the last segment is appended or the match is deleted.
+     *
+     * @param matchId the match identifier
+     * @return the event stream, or 404 if the match does not exist
+     */
+    @GetMapping(path = "{matchId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMatch(@PathVariable("matchId") Long matchId) {
+        SseEmitter emitter = new SseEmitter(streamProperties.getTimeout().toMillis());
+        MatchUpdatePublisher.MatchSubscriber subscriber = new MatchUpdatePublisher.MatchSubscriber() {
+            @Override
+            public void send(String event, Object data) throws IOException {
+                emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void complete() {
+                emitter.complete();
+            }
+        };
+        MatchUpdatePublisher.Subscription subscription = liveIngestionService.subscribe(matchId, subscriber)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Match not found with id " + matchId));
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(error -> subscription.cancel());
+        return emitter;
+    }
+
+    /**
+     * Fetches the status of an ingestion job queued with {@link #ingestCombatLogAsync(InputStream)}.
+     *
+     * @param jobId the job identifier
+     * @return the job, with the match id once it is done or the error if it failed
+     */
+    @GetMapping(
+            path = "jobs/{jobId}",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<IngestionJob> getIngestionJob(@PathVariable("jobId") Long jobId) {
+        IngestionJob job = ingestionJobService.getJob(jobId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Job not found with id " + jobId));
+
+        return ResponseEntity.ok(job);
+    }
+
+    /**
+     * Deletes the match and all of its statistics.
+     *
+     * @param matchId the match identifier
+     * @return 204, or 404 if the match does not exist
+     */
+    @DeleteMapping(path = "{matchId}")
+    public ResponseEntity<Void> deleteMatch(@PathVariable("matchId") Long matchId) {
+        boolean deleted = matchService.deleteMatch(matchId);
+        responseCache.evictMatch(matchId);
+        return deleted ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
     }
 
     /**
      * Fetches the heroes and their kill counts for the given match.
      *
      * @param matchId the match identifier
-     * @return a collection of heroes and their kill counts
+     * @param from    optional start of the window of the match to consider, in milliseconds, inclusive
+     * @param to      optional end of the window of the match to consider, in milliseconds, exclusive
+     * @return a collection of {@link HeroKills}: heroes and their kill counts
      */
     @GetMapping(
             path = "{matchId}",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public ResponseEntity<List<HeroKills>> getMatch(@PathVariable("matchId") Long matchId) {
-        Optional<MatchEntity> matchOptional = matchService.findById(matchId);
-        if (matchOptional.isEmpty()) {
+    public ResponseEntity<byte[]> getMatch(
+            @PathVariable("matchId") Long matchId,
+            @RequestParam(name = "from", required = false) Long from,
+            @RequestParam(name = "to", required = false) Long to,
+            WebRequest request) {
+        TimeRange range = timeRange(from, to);
+        Optional<CachedResponse> heroKills = responseCache.get(matchId, null, QueryType.KILLS, range,
+                () -> matchService.getHeroKills(matchId, range));
+        if (heroKills.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
-        MatchEntity match = matchOptional.get();
-        Set<CombatLogEntryEntity> entries = match.getCombatLogEntries();
-        List<HeroKills> heroKills = new ArrayList<>();
-        Map<String, HeroKills> heroKillsMap = new HashMap<>();
-        Map<String, HeroKills> victimKills = new HashMap<>();
-
-        for (CombatLogEntryEntity entry : entries) {
-            if (entry.getType() == CombatLogEntryEntity.Type.HERO_KILLED) {
-                String killer = entry.getActor();
-                HeroKills killerKills = heroKillsMap.computeIfAbsent(killer, k -> new HeroKills(killer, 0));
-                heroKillsMap.put(killer, new HeroKills(killer, killerKills.getKills() + 1));
-            }
-        }
-
-        heroKills.addAll(heroKillsMap.values());
-        return ResponseEntity.ok(heroKills);
+        return respond(heroKills.get(), request);
     }
 
     /**
@@ -95,28 +277,27 @@ public class MatchController {
      *
      * @param matchId  the match identifier
      * @param heroName the hero name
-     * @return a collection of items bought by the hero during the match
+     * @param from     optional start of the window of the match to consider, in milliseconds, inclusive
+     * @param to       optional end of the window of the match to consider, in milliseconds, exclusive
+     * @return a collection of {@link HeroItem}: items bought by the hero during the match
      */
     @GetMapping(
             path = "{matchId}/{heroName}/items",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public ResponseEntity<List<HeroItem>> getHeroItems(
+    public ResponseEntity<byte[]> getHeroItems(
             @PathVariable("matchId") Long matchId,
-            @PathVariable("heroName") String heroName) {
+            @PathVariable("heroName") String heroName,
+            @RequestParam(name = "from", required = false) Long from,
+            @RequestParam(name = "to", required = false) Long to,
+            WebRequest request) {
 
-        List<HeroItem> heroItems = new ArrayList<>();
-        MatchEntity match = matchService.findById(matchId)
+        TimeRange range = timeRange(from, to);
+        CachedResponse heroItems = responseCache.get(matchId, heroName, QueryType.ITEMS, range,
+                        () -> matchService.getHeroItems(matchId, heroName, range))
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Match not found with id " + matchId));
 
-        for (CombatLogEntryEntity entry : match.getCombatLogEntries()) {
-            if (entry.getType() == CombatLogEntryEntity.Type.ITEM_PURCHASED && heroName.equals(entry.getActor())) {
-                HeroItem heroItem = new HeroItem(entry.getItem(), entry.getTimestamp());
-                heroItems.add(heroItem);
-            }
-        }
-
-        return ResponseEntity.ok(heroItems);
+        return respond(heroItems, request);
     }
 
     /**
@@ -124,32 +305,27 @@ public class MatchController {
      *
      * @param matchId  the match identifier
      * @param heroName the hero name
-     * @return a collection of spells cast by the hero and how many times they were cast
+     * @param from     optional start of the window of the match to consider, in milliseconds, inclusive
+     * @param to       optional end of the window of the match to consider, in milliseconds, exclusive
+     * @return a collection of {@link HeroSpells}: spells cast by the hero and how many times they were cast
      */
     @GetMapping(
             path = "{matchId}/{heroName}/spells",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public ResponseEntity<List<HeroSpells>> getHeroSpells(
+    public ResponseEntity<byte[]> getHeroSpells(
             @PathVariable("matchId") Long matchId,
-            @PathVariable("heroName") String heroName) {
+            @PathVariable("heroName") String heroName,
+            @RequestParam(name = "from", required = false) Long from,
+            @RequestParam(name = "to", required = false) Long to,
+            WebRequest request) {
 
-        MatchEntity match = matchService.findById(matchId)
+        TimeRange range = timeRange(from, to);
+        CachedResponse heroSpells = responseCache.get(matchId, heroName, QueryType.SPELLS, range,
+                        () -> matchService.getHeroSpells(matchId, heroName, range))
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Match not found with id " + matchId));
-        List<CombatLogEntryEntity> heroEntries = combatLogEntryRepository.findByMatchAndActor(match, heroName);
 
-        Map<String, List<CombatLogEntryEntity>> spellEntriesMap = heroEntries.stream()
-                .filter(entry -> entry.getType() == CombatLogEntryEntity.Type.SPELL_CAST)
-                .collect(Collectors.groupingBy(CombatLogEntryEntity::getAbility));
-
-        List<HeroSpells> heroSpells = new ArrayList<>();
-        for (Map.Entry<String, List<CombatLogEntryEntity>> entry : spellEntriesMap.entrySet()) {
-            String spellName = entry.getKey();
-            List<CombatLogEntryEntity> spellEntries = entry.getValue();
-            heroSpells.add(new HeroSpells(spellName, spellEntries.size()));
-        }
-
-        return ResponseEntity.ok(heroSpells);
+        return respond(heroSpells, request);
     }
 
     /**
@@ -157,45 +333,98 @@ public class MatchController {
      *
      * @param matchId  the match identifier
      * @param heroName the hero name
-     * @return a collection of "damage done" (target, number of times and total damage) elements
+     * @param from     optional start of the window of the match to consider, in milliseconds, inclusive
+     * @param to       optional end of the window of the match to consider, in milliseconds, exclusive
+     * @return a collection of {@link HeroDamage}: "damage done" (target, number of times and total damage) elements
      */
     @GetMapping(
             path = "{matchId}/{heroName}/damage",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public ResponseEntity<List<HeroDamage>> getHeroDamages(
+    public ResponseEntity<byte[]> getHeroDamages(
             @PathVariable("matchId") Long matchId,
-            @PathVariable("heroName") String heroName) {
-        MatchEntity match = matchService.findById(matchId)
+            @PathVariable("heroName") String heroName,
+            @RequestParam(name = "from", required = false) Long from,
+            @RequestParam(name = "to", required = false) Long to,
+            WebRequest request) {
+
+        TimeRange range = timeRange(from, to);
+        CachedResponse heroDamages = responseCache.get(matchId, heroName, QueryType.DAMAGE, range,
+                        () -> matchService.getHeroDamages(matchId, heroName, range))
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Match not found with id " + matchId));
 
-        List<CombatLogEntryEntity> entries = match.getCombatLogEntries()
-                .stream()
-                .filter(entry ->
-                        entry.getType() == CombatLogEntryEntity.Type.DAMAGE_DONE &&
-                                entry.getTarget() != null &&
-                                entry.getTarget().equals(heroName)
-                )
-                .collect(Collectors.toList());
-
-        Map<String, Integer> damageByActor = entries
-                .stream()
-                .filter(entry -> entry.getActor() != null)
-                .collect(Collectors.toMap(
-                        CombatLogEntryEntity::getActor,
-                        CombatLogEntryEntity::getDamage,
-                        Integer::sum
-                ));
-
-        List<HeroDamage> heroDamages = damageByActor.entrySet()
-                .stream()
-                .map(entry -> new HeroDamage(
-                        entry.getKey(),
-                        (int) entries.stream().filter(e -> e.getActor().equals(entry.getKey())).count(),
-                        entry.getValue()
-                ))
-                .collect(Collectors.toList());
-
-        return ResponseEntity.ok(heroDamages);
+        return respond(heroDamages, request);
+    }
+
+    /**
+     * Fetches the kills, items, spells and damage of every hero of the given match at once, as the per hero endpoints
+     * return them, with a single pass over the events of the match instead of one query per hero and statistic.
+     *
+     * @param matchId the match identifier
+     * @param from    optional start of the window of the match to consider, in milliseconds, inclusive
+     * @param to      optional end of the window of the match to consider, in milliseconds, exclusive
+     * @return a collection of {@link HeroSummary}, ordered like the heroes of {@link #getMatch}
+     */
+    @GetMapping(
+            path = "{matchId}/summary",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<byte[]> getSummary(
+            @PathVariable("matchId") Long matchId,
+            @RequestParam(name = "from", required = false) Long from,
+            @RequestParam(name = "to", required = false) Long to,
+            WebRequest request) {
+
+        TimeRange range = timeRange(from, to);
+        CachedResponse summary = responseCache.get(matchId, null, QueryType.SUMMARY, range,
+                        () -> matchService.getSummary(matchId, range))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Match not found with id " + matchId));
+
+        return respond(summary, request);
+    }
+
+    /**
+     * Fetches the events of the given match in log order, e.g. to replay a teamfight.
+     *
+     * @param matchId the match identifier
+     * @param from    optional start of the window of the match, in milliseconds, inclusive
+     * @param to      optional end of the window of the match, in milliseconds, exclusive
+     * @return a collection of {@link TimelineEvent}, ordered by timestamp
+     */
+    @GetMapping(
+            path = "{matchId}/timeline",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<List<TimelineEvent>> getTimeline(
+            @PathVariable("matchId") Long matchId,
+            @RequestParam(name = "from", required = false) Long from,
+            @RequestParam(name = "to", required = false) Long to) {
+
+        List<TimelineEvent> timeline = matchService.getTimeline(matchId, timeRange(from, to))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Match not found with id " + matchId));
+
+        return ResponseEntity.ok(timeline);
+    }
+
+    private static TimeRange timeRange(Long from, Long to) {
+        try {
+            return TimeRange.of(from, to);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Answers 304 without a body if the client already has the response, see
+     * {@link WebRequest#checkNotModified(String)}.
+     */
+    private static ResponseEntity<byte[]> respond(CachedResponse response, WebRequest request) {
+        if (request.checkNotModified(response.getEtag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(response.getEtag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(response.getJson());
     }
 }
@@ -0,0 +1,135 @@
+package gg.bayes.challenge.rest.encoding;
+
+import com.github.luben.zstd.ZstdIOException;
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * The request content codings accepted for uploads. Decoding wraps the request body, so it is decompressed while it
+ * is read and never inflated as a whole.
+ */
+public enum ContentEncoding {
+    IDENTITY("identity") {
+        @Override
+        InputStream wrap(InputStream in) {
+            return in;
+        }
+    },
+    GZIP("gzip") {
+        @Override
+        InputStream wrap(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+    ZSTD("zstd") {
+        @Override
+        InputStream wrap(InputStream in) throws IOException {
+            return new ZstdInputStream(in);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String token;
+
+    ContentEncoding(String token) {
+        this.token = token;
+    }
+
+    /**
+     * @param token a single content coding, as in the {@code Content-Encoding} header
+     * @return the matching encoding, empty if it is not supported
+     */
+    public static Optional<ContentEncoding> of(String token) {
+        String normalized = token.trim().toLowerCase(Locale.ROOT);
+        for (ContentEncoding encoding : values()) {
+            if (encoding.token.equals(normalized)) {
+                return Optional.of(encoding);
+            }
+        }
+        // HTTP/1.1 asks recipients to treat x-gzip as gzip
+        return "x-gzip".equals(normalized) ? Optional.of(GZIP) : Optional.empty();
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Wraps {@code in} into a stream returning the decoded content. Nothing is read before the first read of the
+     * returned stream, and content that turns out not to be valid in this encoding fails that read with an
+     * {@link IllegalArgumentException}, like any other malformed combat log.
+     */
+    public InputStream decode(InputStream in) {
+        return this == IDENTITY ? in : new DecodingInputStream(in, this);
+    }
+
+    abstract InputStream wrap(InputStream in) throws IOException;
+
+    private static IllegalArgumentException malformed(ContentEncoding encoding, IOException cause) {
+        return new IllegalArgumentException("Malformed " + encoding.token + " content: " + cause.getMessage(), cause);
+    }
+
+    private static final class DecodingInputStream extends FilterInputStream {
+        private final ContentEncoding encoding;
+        private InputStream decoder;
+
+        DecodingInputStream(InputStream in, ContentEncoding encoding) {
+            super(in);
+            this.encoding = encoding;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return decoder().read();
+            } catch (ZipException | EOFException | ZstdIOException e) {
+                throw malformed(encoding, e);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return decoder().read(b, off, len);
+            } catch (ZipException | EOFException | ZstdIOException e) {
+                throw malformed(encoding, e);
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return decoder == null ? 0 : decoder.available();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (decoder != null) {
+                decoder.close();
+            } else {
+                in.close();
+            }
+        }
+
+        // the gzip header is read when the decoder is created, so creating it is deferred to the first read
+        private InputStream decoder() throws IOException {
+            if (decoder == null) {
+                decoder = encoding.wrap(in);
+            }
+            return decoder;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package gg.bayes.challenge.rest.encoding;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Decodes request bodies sent with a {@code Content-Encoding} of {@code gzip} or {@code zstd}, so the controllers read
+ * the plain combat log. The body is decompressed as it is read and never held in memory as a whole. Requests with an
+ * unsupported encoding are answered with 415, as HTTP/1.1 asks for; the accepted encodings are listed in the
+ * {@code Accept-Encoding} response header.
+ */
+@Component
+public class RequestDecompressionFilter extends OncePerRequestFilter {
+    private static final String ACCEPTED_ENCODINGS = "gzip, zstd";
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getHeader(HttpHeaders.CONTENT_ENCODING) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        List<ContentEncoding> encodings = new ArrayList<>();
+        for (Enumeration<String> headers = request.getHeaders(HttpHeaders.CONTENT_ENCODING); headers.hasMoreElements(); ) {
+            for (String token : headers.nextElement().split(",")) {
+                if (token.isBlank()) {
+                    continue;
+                }
+                Optional<ContentEncoding> encoding = ContentEncoding.of(token);
+                if (encoding.isEmpty()) {
+                    response.setHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPTED_ENCODINGS);
+                    response.sendError(HttpStatus.UNSUPPORTED_MEDIA_TYPE.value(),
+                            "Unsupported content encoding " + token.trim());
+                    return;
+                }
+                encodings.add(encoding.get());
+            }
+        }
+        chain.doFilter(new DecodedRequest(request, encodings), response);
+    }
+
+    /**
+     * The request with its body decoded. The codings were applied in the listed order, so they are undone from last to
+     * first. Content-Encoding and Content-Length describe the encoded body and are hidden.
+     */
+    private static final class DecodedRequest extends HttpServletRequestWrapper {
+        private final List<ContentEncoding> encodings;
+        private ServletInputStream inputStream;
+        private BufferedReader reader;
+
+        DecodedRequest(HttpServletRequest request, List<ContentEncoding> encodings) {
+            super(request);
+            this.encodings = encodings;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (reader != null) {
+                throw new IllegalStateException("getReader() has already been called for this request");
+            }
+            if (encodings.isEmpty()) {
+                return super.getInputStream();
+            }
+            if (inputStream == null) {
+                InputStream decoded = super.getInputStream();
+                for (int i = encodings.size() - 1; i >= 0; i--) {
+                    decoded = encodings.get(i).decode(decoded);
+                }
+                inputStream = new DecodedInputStream(decoded);
+            }
+            return inputStream;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            if (reader == null) {
+                String encoding = getCharacterEncoding();
+                Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.ISO_8859_1;
+                reader = new BufferedReader(new InputStreamReader(getInputStream(), charset));
+            }
+            return reader;
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return isHidden(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return isHidden(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+        }
+
+        @Override
+        public int getIntHeader(String name) {
+            return isHidden(name) ? -1 : super.getIntHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            List<String> names = Collections.list(super.getHeaderNames());
+            names.removeIf(DecodedRequest::isHidden);
+            return Collections.enumeration(names);
+        }
+
+        private static boolean isHidden(String name) {
+            return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)
+                    || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+        }
+    }
+
+    /**
+     * Reads the decoded body blocking. Non-blocking reads are not offered: the decoders pull compressed bytes from the
+     * request as they need them, so they could block even after the request stream reported data to be available.
+     */
+    private static final class DecodedInputStream extends ServletInputStream {
+        private final InputStream in;
+        private boolean finished;
+
+        DecodedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            finished = b < 0;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            finished = n < 0;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            throw new IllegalStateException("Compressed request bodies can only be read blocking");
+        }
+    }
+}
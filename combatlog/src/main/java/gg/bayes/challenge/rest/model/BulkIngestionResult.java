@@ -0,0 +1,14 @@
+package gg.bayes.challenge.rest.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Value;
+
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkIngestionResult {
+    String name;
+    @JsonProperty("match_id")
+    Long matchId;
+    String error;
+}
@@ -0,0 +1,9 @@
+package gg.bayes.challenge.rest.model;
+
+import lombok.Value;
+
+@Value
+public class LeaderboardEntry {
+    String name;
+    Long total;
+}
@@ -0,0 +1,20 @@
+package gg.bayes.challenge.rest.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
+import lombok.Value;
+
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TimelineEvent {
+    Long timestamp;
+    CombatLogEntryEntity.Type type;
+    String actor;
+    String target;
+    String ability;
+    @JsonProperty("ability_level")
+    Integer abilityLevel;
+    String item;
+    Integer damage;
+}
@@ -0,0 +1,446 @@
+package gg.bayes.challenge.service;
+
+import gg.bayes.challenge.config.IngestionProperties;
+import gg.bayes.challenge.rest.model.BulkIngestionResult;
+import gg.bayes.challenge.service.parser.CombatLogEvent;
+import gg.bayes.challenge.service.parser.CombatLogLineParser;
+import gg.bayes.challenge.service.store.CombatLogEventSource;
+import gg.bayes.challenge.service.store.MatchStore;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Ingests many combat logs at once. The logs are taken in groups of at most
+ * {@link IngestionProperties#getBulkGroupSize()} logs and {@link IngestionProperties#getBulkGroupBytes()} bytes: the
+ * logs of a group are parsed concurrently on {@link IngestionProperties#getBulkParallelism()} threads, then all of
+ * them are stored with a single {@link MatchStore#saveAll(List)}, so they share one transaction and the JDBC batches.
+ * The byte budget bounds the parsed events held in memory; a log larger than the budget is parsed while it is stored,
+ * on its own.
+ * <p>
+ * Every log gets its own result. A log that can not be read, is blank or is larger than
+ * {@link IngestionProperties#getMaxBytes()} fails on its own. If storing a group fails, its logs are stored one at a
+ * time, so only the logs that can not be stored fail.
+ * <p>
+ * With {@link IngestionProperties#isDeduplicate()} on, every log is hashed while it is spooled (zip entries) or before
+ * it is grouped (uploads), and resolved like a single upload, see {@link CombatLogParserService#ingest(InputStream)}:
+ * a log already stored, being ingested or repeated in the same request gets the id of that match, so a retried bulk
+ * request stores nothing twice. Those logs are only waited for once every group of the request is stored, as the
+ * request holds no ingestion of its own by then and can not wait for one that waits for it.
+ */
+@Slf4j
+@Service
+public class BulkIngestionService {
+    private final MatchStore matchStore;
+    private final CombatLogLineParser lineParser;
+    private final LeaderboardService leaderboardService;
+    private final CombatLogParserService combatLogParserService;
+    private final ExecutorService executor;
+    private final boolean deduplicate;
+    private final int groupSize;
+    private final long groupBytes;
+    private final long maxBytes;
+
+    @Autowired
+    public BulkIngestionService(MatchStore matchStore, CombatLogLineParser lineParser,
+                                IngestionProperties ingestionProperties, LeaderboardService leaderboardService,
+                                CombatLogParserService combatLogParserService) {
+        this.matchStore = matchStore;
+        this.lineParser = lineParser;
+        this.leaderboardService = leaderboardService;
+        this.combatLogParserService = combatLogParserService;
+        this.deduplicate = ingestionProperties.isDeduplicate();
+        this.groupSize = ingestionProperties.getBulkGroupSize();
+        this.groupBytes = ingestionProperties.getBulkGroupBytes();
+        this.maxBytes = ingestionProperties.getMaxBytes();
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(ingestionProperties.getBulkParallelism(), runnable -> {
+            Thread thread = new Thread(runnable, "bulk-parse-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Ingests each upload as its own match.
+     *
+     * @param uploads the combat logs, UTF-8 encoded
+     * @return one result per upload, in the same order, with either the match id or the error
+     */
+    public List<BulkIngestionResult> ingest(List<Upload> uploads) throws IOException {
+        Groups groups = new Groups();
+        try {
+            for (Upload upload : uploads) {
+                String contentHash;
+                try {
+                    contentHash = contentHash(upload);
+                } catch (IOException | RuntimeException e) {
+                    log.debug("Failed to read combat log {}", upload.getName(), e);
+                    groups.fail(upload.getName(), e.getMessage());
+                    continue;
+                }
+                groups.add(upload, null, contentHash);
+            }
+            return groups.finish();
+        } finally {
+            groups.close();
+        }
+    }
+
+    // null if not deduplicating, or if the upload is too large to be stored anyway
+    private String contentHash(Upload upload) throws IOException {
+        if (!deduplicate || upload.getSize() > maxBytes) {
+            return null;
+        }
+        MessageDigest digest = CombatLogParserService.sha256();
+        try (InputStream content = new DigestInputStream(upload.getContent().getInputStream(), digest)) {
+            content.transferTo(OutputStream.nullOutputStream());
+        }
+        return CombatLogParserService.hex(digest.digest());
+    }
+
+    /**
+     * Ingests every file of a zip archive as its own match. The entries are spooled to temporary files, so the logs of
+     * a group can be parsed concurrently, and each group's files are deleted once it is stored. An entry is spooled up
+     * to just past {@link IngestionProperties#getMaxBytes()}, enough to fail it as too large.
+     *
+     * @param archive the zip archive, its files are UTF-8 encoded combat logs
+     * @return one result per file, in archive order
+     * @throws IOException if the archive can not be read
+     */
+    public List<BulkIngestionResult> ingestZip(InputStream archive) throws IOException {
+        Groups groups = new Groups();
+        try {
+            ZipInputStream zip = new ZipInputStream(archive, StandardCharsets.UTF_8);
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                Path spool = Files.createTempFile("combatlog-bulk-", ".log");
+                try {
+                    MessageDigest digest = deduplicate ? CombatLogParserService.sha256() : null;
+                    copy(digest != null ? new DigestInputStream(zip, digest) : zip, spool, maxBytes + 1);
+                    long size = Files.size(spool);
+                    String contentHash = digest != null && size <= maxBytes
+                            ? CombatLogParserService.hex(digest.digest())
+                            : null;
+                    groups.add(new Upload(entry.getName(), new FileSystemResource(spool), size), spool, contentHash);
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(spool);
+                    throw e;
+                }
+            }
+            return groups.finish();
+        } finally {
+            groups.close();
+        }
+    }
+
+    // copies at most limit bytes, the rest of the entry is skipped by the next ZipInputStream.getNextEntry()
+    private static void copy(InputStream in, Path spool, long limit) throws IOException {
+        byte[] buffer = new byte[8192];
+        try (OutputStream out = Files.newOutputStream(spool)) {
+            long remaining = limit;
+            int n;
+            while (remaining > 0 && (n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) >= 0) {
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Collects the uploads into groups, ingests each group once it is full and keeps the results in upload order.
+     */
+    private final class Groups {
+        private final List<BulkIngestionResult> results = new ArrayList<>();
+        private final List<Entry> group = new ArrayList<>();
+        private final List<Path> spools = new ArrayList<>();
+        // uploads of content stored or being ingested elsewhere, answered once every group is stored
+        private final List<Duplicate> duplicates = new ArrayList<>();
+        private long bytes;
+
+        // the spool the upload was read from, if any, is deleted once the upload is ingested
+        void add(Upload upload, Path spool, String contentHash) throws IOException {
+            boolean streamed = upload.getSize() > groupBytes;
+            if (streamed || group.size() == groupSize || bytes + upload.getSize() > groupBytes) {
+                flush();
+            }
+            int position = results.size();
+            results.add(null);
+            CompletableFuture<Long> ingestion = null;
+            if (contentHash != null) {
+                ingestion = new CompletableFuture<>();
+                Optional<CompletableFuture<Long>> existing = combatLogParserService.claim(contentHash, ingestion);
+                if (existing.isPresent()) {
+                    duplicates.add(new Duplicate(position, upload.getName(), existing.get()));
+                    delete(spool);
+                    return;
+                }
+            }
+            Entry entry = new Entry(position, upload, contentHash, ingestion);
+            if (streamed) {
+                try {
+                    results.set(position, ingestStreaming(entry));
+                } finally {
+                    release(entry);
+                    delete(spool);
+                }
+                return;
+            }
+            group.add(entry);
+            if (spool != null) {
+                spools.add(spool);
+            }
+            bytes += upload.getSize();
+        }
+
+        void fail(String name, String error) {
+            results.add(new BulkIngestionResult(name, null, error));
+        }
+
+        List<BulkIngestionResult> finish() throws IOException {
+            flush();
+            for (Duplicate duplicate : duplicates) {
+                results.set(duplicate.getPosition(), await(duplicate));
+            }
+            return results;
+        }
+
+        // releases what an ingestion cut short by an exception left behind
+        void close() throws IOException {
+            group.forEach(this::release);
+            group.clear();
+            for (Path spool : spools) {
+                Files.deleteIfExists(spool);
+            }
+            spools.clear();
+        }
+
+        private void flush() throws IOException {
+            if (group.isEmpty()) {
+                return;
+            }
+            try {
+                List<BulkIngestionResult> stored = ingestGroup(group);
+                for (int i = 0; i < group.size(); i++) {
+                    results.set(group.get(i).getPosition(), stored.get(i));
+                }
+            } finally {
+                close();
+                bytes = 0;
+            }
+        }
+
+        // fails the ingestion if it was not completed, so the uploads waiting for it do not hang
+        private void release(Entry entry) {
+            if (entry.getIngestion() != null) {
+                entry.getIngestion().completeExceptionally(
+                        new IOException("The bulk ingestion of the same combat log was aborted"));
+                combatLogParserService.release(entry.getContentHash(), entry.getIngestion());
+            }
+        }
+
+        private BulkIngestionResult await(Duplicate duplicate) throws InterruptedIOException {
+            try {
+                return new BulkIngestionResult(duplicate.getName(),
+                        CombatLogParserService.await(duplicate.getIngestion()), null);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                return new BulkIngestionResult(duplicate.getName(), null, e.getMessage());
+            }
+        }
+
+        private void delete(Path spool) throws IOException {
+            if (spool != null) {
+                Files.deleteIfExists(spool);
+            }
+        }
+    }
+
+    private List<BulkIngestionResult> ingestGroup(List<Entry> group) throws InterruptedIOException {
+        List<Future<List<CombatLogEvent>>> parsed = new ArrayList<>(group.size());
+        for (Entry entry : group) {
+            parsed.add(executor.submit(() -> {
+                List<CombatLogEvent> events = new ArrayList<>();
+                parse(entry.getUpload().getContent(), events::add);
+                return events;
+            }));
+        }
+
+        String[] errors = new String[group.size()];
+        Throwable[] failures = new Throwable[group.size()];
+        List<CombatLogEventSource> sources = new ArrayList<>(group.size());
+        List<String> contentHashes = new ArrayList<>(group.size());
+        List<LeaderboardService.Tally> tallies = new ArrayList<>(group.size());
+        List<Integer> stored = new ArrayList<>(group.size());
+        for (int i = 0; i < group.size(); i++) {
+            try {
+                List<CombatLogEvent> events = parsed.get(i).get();
+                sources.add(consumer -> events.forEach(consumer));
+                contentHashes.add(group.get(i).getContentHash());
+                LeaderboardService.Tally tally = new LeaderboardService.Tally();
+                events.forEach(tally::add);
+                tallies.add(tally);
+                stored.add(i);
+            } catch (InterruptedException e) {
+                parsed.forEach(future -> future.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while parsing the combat logs");
+            } catch (ExecutionException e) {
+                log.debug("Failed to parse combat log {}", group.get(i).getUpload().getName(), e.getCause());
+                errors[i] = e.getCause().getMessage();
+                failures[i] = e.getCause();
+            }
+        }
+
+        Long[] matchIds = new Long[group.size()];
+        if (!sources.isEmpty()) {
+            try {
+                List<Long> ids = matchStore.saveAll(sources, contentHashes);
+                for (int j = 0; j < ids.size(); j++) {
+                    matchIds[stored.get(j)] = ids.get(j);
+                    leaderboardService.record(tallies.get(j));
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to store {} combat logs together, storing them one at a time", sources.size(), e);
+                for (int j = 0; j < sources.size(); j++) {
+                    int i = stored.get(j);
+                    try {
+                        matchIds[i] = matchStore.save(sources.get(j), contentHashes.get(j));
+                        leaderboardService.record(tallies.get(j));
+                    } catch (IOException | RuntimeException single) {
+                        log.warn("Failed to store combat log {}", group.get(i).getUpload().getName(), single);
+                        errors[i] = "Failed to store the combat log: " + single.getMessage();
+                        failures[i] = single;
+                    }
+                }
+            }
+        }
+
+        List<BulkIngestionResult> results = new ArrayList<>(group.size());
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).complete(matchIds[i], failures[i]);
+            results.add(new BulkIngestionResult(group.get(i).getUpload().getName(), matchIds[i], errors[i]));
+        }
+        return results;
+    }
+
+    // parses the log while the store consumes its events, so they are never all held in memory
+    private BulkIngestionResult ingestStreaming(Entry entry) {
+        Upload upload = entry.getUpload();
+        LeaderboardService.Tally tally = new LeaderboardService.Tally();
+        try {
+            long matchId = matchStore.save(consumer -> parse(upload.getContent(), event -> {
+                tally.add(event);
+                consumer.accept(event);
+            }), entry.getContentHash());
+            leaderboardService.record(tally);
+            entry.complete(matchId, null);
+            return new BulkIngestionResult(upload.getName(), matchId, null);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to ingest combat log {}", upload.getName(), e);
+            entry.complete(null, e);
+            return new BulkIngestionResult(upload.getName(), null, e.getMessage());
+        }
+    }
+
+    // hands each event to the consumer as a new instance, which it may keep
+    private void parse(InputStreamSource content, Consumer<CombatLogEvent> consumer) throws IOException {
+        boolean nonBlank = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new SizeLimitedInputStream(content.getInputStream(), maxBytes), StandardCharsets.UTF_8))) {
+            CombatLogEvent event = new CombatLogEvent();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!nonBlank && !line.isBlank()) {
+                    nonBlank = true;
+                }
+                if (lineParser.parse(line, event)) {
+                    consumer.accept(event);
+                    event = new CombatLogEvent();
+                }
+            }
+        }
+        if (!nonBlank) {
+            throw new IllegalArgumentException("Combat log is empty");
+        }
+    }
+
+    /**
+     * A combat log of a bulk upload, named after its file, and its size in bytes.
+     */
+    @Value
+    public static class Upload {
+        String name;
+        InputStreamSource content;
+        long size;
+    }
+
+    /**
+     * An upload of the pending group, its position among the results, and, if it is deduplicated, the ingestion taken
+     * over from {@link CombatLogParserService#claim(String, CompletableFuture)} for its content.
+     */
+    @Value
+    private static class Entry {
+        int position;
+        Upload upload;
+        String contentHash;
+        CompletableFuture<Long> ingestion;
+
+        void complete(Long matchId, Throwable failure) {
+            if (ingestion == null) {
+                return;
+            }
+            if (matchId != null) {
+                ingestion.complete(matchId);
+            } else {
+                ingestion.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * An upload of content already stored or being ingested, and the match of that content.
+     */
+    @Value
+    private static class Duplicate {
+        int position;
+        String name;
+        CompletableFuture<Long> ingestion;
+    }
+}
@@ -1,101 +1,303 @@
 package gg.bayes.challenge.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
-import gg.bayes.challenge.persistence.model.MatchEntity;
-import gg.bayes.challenge.persistence.repository.CombatLogEntryRepository;
-import gg.bayes.challenge.persistence.repository.MatchRepository;
+import gg.bayes.challenge.config.IngestionProperties;
+import gg.bayes.challenge.service.parser.ChunkedCombatLogParser;
+import gg.bayes.challenge.service.parser.CombatLogEvent;
+import gg.bayes.challenge.service.parser.CombatLogLineParser;
+import gg.bayes.challenge.service.store.MatchStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+@Slf4j
 @Service
 public class CombatLogParserService {
-    private final MatchRepository matchRepository;
-    private final CombatLogEntryRepository combatLogEntryRepository;
+    private final MatchStore matchStore;
+    private final CombatLogLineParser lineParser;
+    private final ChunkedCombatLogParser chunkedParser;
+    private final LeaderboardService leaderboardService;
+    private final boolean deduplicate;
+    private final long maxBytes;
+    private final Counter deduplicated;
+    // content hash -> the ingestion of that content in progress
+    private final Map<String, CompletableFuture<Long>> inFlight = new ConcurrentHashMap<>();
+    private final Timer parseTimer;
+    private final Timer persistTimer;
+    private final DistributionSummary matchSizes;
 
     @Autowired
-    public CombatLogParserService(MatchRepository matchRepository, CombatLogEntryRepository combatLogEntryRepository) {
-        this.matchRepository = matchRepository;
-        this.combatLogEntryRepository = combatLogEntryRepository;
+    public CombatLogParserService(MatchStore matchStore, CombatLogLineParser lineParser,
+                                  IngestionProperties ingestionProperties, MeterRegistry meterRegistry,
+                                  LeaderboardService leaderboardService) {
+        this.matchStore = matchStore;
+        this.lineParser = lineParser;
+        this.leaderboardService = leaderboardService;
+        this.deduplicate = ingestionProperties.isDeduplicate();
+        this.maxBytes = ingestionProperties.getMaxBytes();
+        this.deduplicated = Counter.builder("dota.ingest.deduplicated")
+                .description("Uploads answered with the match of an identical combat log, without parsing")
+                .register(meterRegistry);
+        this.parseTimer = Timer.builder("dota.ingest.parse")
+                .description("Time spent reading and parsing a combat log")
+                .register(meterRegistry);
+        this.persistTimer = Timer.builder("dota.ingest.persist")
+                .description("Time spent storing the events of a combat log")
+                .register(meterRegistry);
+        this.matchSizes = DistributionSummary.builder("dota.ingest.match.size")
+                .description("Events stored per combat log")
+                .baseUnit("events")
+                .register(meterRegistry);
+        this.chunkedParser = ingestionProperties.getParallelism() > 1
+                ? new ChunkedCombatLogParser(lineParser, ingestionProperties.getParallelism(),
+                ingestionProperties.getChunkSize())
+                : null;
     }
 
-    private final Pattern TIMESTAMP_PATTERN = Pattern.compile("^\\[(.*?)\\]");
-    private final Pattern purchaseItemPattern = Pattern.compile("\\[.*?\\] npc_dota_hero_(?<actor>[^\\s]+) buys item item_(?<item>[^\\s]+)");
-    private final Pattern heroKilledPattern = Pattern.compile("\\[.*?\\] npc_dota_hero_(?<actor>[^\\s]+) kills npc_dota_hero_(?<target>[^\\s]+) with (?<ability>[^\\s]+) Level (?<abilityLevel>\\d+)");
-    private final Pattern spellCastPattern = Pattern.compile("\\[.*?\\] npc_dota_hero_(?<actor>[^\\s]+) casts ability (?<ability>[^\\s]+) \\(lvl (?<abilityLevel>\\d+)\\) on npc_dota_hero_(?<target>[^\\s]+)");
-    private final Pattern damageDonePattern = Pattern.compile("\\[.*?\\] npc_dota_hero_(?<actor>[^\\s]+) hits npc_dota_hero_(?<target>[^\\s]+) with (?<damage>\\d+) damage");
-
-    public Long parseAndSave(String combatLog) {
-        Set<CombatLogEntryEntity> entries = new HashSet<>();
-        MatchEntity match = new MatchEntity();
-        String[] lines = combatLog.split("\\r?\\n");
-        for (String line : lines) {
-            Matcher purchaseItemMatcher = purchaseItemPattern.matcher(line);
-            Matcher heroKilledMatcher = heroKilledPattern.matcher(line);
-            Matcher spellCastMatcher = spellCastPattern.matcher(line);
-            Matcher damageDoneMatcher = damageDonePattern.matcher(line);
-            CombatLogEntryEntity entry = new CombatLogEntryEntity();
-            if (purchaseItemMatcher.find()) {
-                entry.setMatch(match);
-                entry.setTimestamp(extractTimestamp(line));
-                entry.setType(CombatLogEntryEntity.Type.ITEM_PURCHASED);
-                entry.setActor(purchaseItemMatcher.group("actor"));
-                entry.setItem(purchaseItemMatcher.group("item"));
-                entries.add(entry);
-            } else if (heroKilledMatcher.find()) {
-                entry.setMatch(match);
-                entry.setTimestamp(extractTimestamp(line));
-                entry.setType(CombatLogEntryEntity.Type.HERO_KILLED);
-                entry.setActor(heroKilledMatcher.group("actor"));
-                entry.setTarget(heroKilledMatcher.group("target"));
-                entry.setAbility(heroKilledMatcher.group("ability"));
-                entry.setAbilityLevel(Integer.parseInt(heroKilledMatcher.group("abilityLevel")));
-                entries.add(entry);
-            } else if (spellCastMatcher.find()) {
-                entry.setMatch(match);
-                entry.setTimestamp(extractTimestamp(line));
-                entry.setType(CombatLogEntryEntity.Type.SPELL_CAST);
-                entry.setActor(spellCastMatcher.group("actor"));
-                entry.setTarget(spellCastMatcher.group("target"));
-                entry.setAbility(spellCastMatcher.group("ability"));
-                entries.add(entry);
-            } else if (damageDoneMatcher.find()) {
-                entry.setMatch(match);
-                entry.setTimestamp(extractTimestamp(line));
-                entry.setType(CombatLogEntryEntity.Type.DAMAGE_DONE);
-                entry.setActor(spellCastMatcher.group("actor"));
-                entry.setTarget(spellCastMatcher.group("target"));
-                entry.setAbility(spellCastMatcher.group("ability"));
-                entry.setAbilityLevel(Integer.parseInt(heroKilledMatcher.group("abilityLevel")));
-                entries.add(entry);
+    /**
+     * Ingests an uploaded combat log, once. The log is spooled to a temporary file while its SHA-256 hash is computed;
+     * if a match was already stored for the same content, its id is returned without parsing the log again, and
+     * concurrent uploads of the same content wait for the one that parses it. Otherwise, or if
+     * {@link IngestionProperties#isDeduplicate()} is off, the log is stored as a new match like
+     * {@link #parseAndSave(InputStream)}. Logs larger than {@link IngestionProperties#getMaxBytes()} are refused while
+     * they are read, before anything is stored.
+     *
+     * @param combatLog the combat log content, UTF-8 encoded
+     * @return the id of the match holding the events of the combat log
+     * @throws IOException                if the combat log can not be read or spooled
+     * @throws CombatLogTooLargeException if the combat log is too large
+     * @throws IllegalArgumentException   if the combat log is blank
+     */
+    public Long ingest(InputStream combatLog) throws IOException {
+        InputStream limited = new SizeLimitedInputStream(combatLog, maxBytes);
+        if (!deduplicate) {
+            return parseAndSave(limited);
+        }
+        Path spool = Files.createTempFile("combatlog-", ".log");
+        try {
+            MessageDigest digest = sha256();
+            Files.copy(new DigestInputStream(limited, digest), spool, StandardCopyOption.REPLACE_EXISTING);
+            return ingest(spool, hex(digest.digest()));
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    /**
+     * Ingests a combat log that is already in a file, like {@link #ingest(InputStream)}.
+     *
+     * @param combatLog the combat log file, UTF-8 encoded
+     * @return the id of the match holding the events of the combat log
+     * @throws IOException              if the combat log can not be read
+     * @throws IllegalArgumentException if the combat log is blank
+     */
+    public Long ingest(Path combatLog) throws IOException {
+        if (!deduplicate) {
+            try (InputStream content = Files.newInputStream(combatLog)) {
+                return parseAndSave(content);
+            }
+        }
+        MessageDigest digest = sha256();
+        try (InputStream content = new DigestInputStream(Files.newInputStream(combatLog), digest)) {
+            content.transferTo(OutputStream.nullOutputStream());
+        }
+        return ingest(combatLog, hex(digest.digest()));
+    }
 
+    private Long ingest(Path combatLog, String contentHash) throws IOException {
+        CompletableFuture<Long> ingestion = new CompletableFuture<>();
+        Optional<CompletableFuture<Long>> existing = claim(contentHash, ingestion);
+        if (existing.isPresent()) {
+            return await(existing.get());
+        }
+        try {
+            Long matchId;
+            try (InputStream content = Files.newInputStream(combatLog)) {
+                matchId = save(content, contentHash);
+            }
+            ingestion.complete(matchId);
+            return matchId;
+        } catch (IOException | RuntimeException e) {
+            ingestion.completeExceptionally(e);
+            throw e;
+        } finally {
+            release(contentHash, ingestion);
+        }
+    }
+
+    /**
+     * Looks the content up among the stored matches and the running ingestions, and takes over its ingestion if it is
+     * in neither. {@link BulkIngestionService} goes through here as well, so uploads of the same content coalesce
+     * whichever endpoint they came through.
+     *
+     * @param ingestion to be completed by the caller with the id of the match it stores, or with its failure, if it
+     *                  takes over the ingestion
+     * @return the match of the content: done if it is stored, pending while another ingestion stores it; empty if the
+     * caller took over the ingestion, and must {@link #release(String, CompletableFuture) release} it once completed
+     */
+    Optional<CompletableFuture<Long>> claim(String contentHash, CompletableFuture<Long> ingestion) {
+        Optional<Long> stored = matchStore.findByContentHash(contentHash);
+        CompletableFuture<Long> existing;
+        if (stored.isPresent()) {
+            existing = CompletableFuture.completedFuture(stored.get());
+        } else {
+            existing = inFlight.putIfAbsent(contentHash, ingestion);
+            if (existing == null) {
+                // the match may have been stored between the lookup and taking over the ingestion
+                stored = matchStore.findByContentHash(contentHash);
+                if (stored.isEmpty()) {
+                    return Optional.empty();
+                }
+                ingestion.complete(stored.get());
+                release(contentHash, ingestion);
+                existing = ingestion;
             }
         }
-        match.setCombatLogEntries(entries);
-        return matchRepository.save(match).getId();
+        deduplicated.increment();
+        return Optional.of(existing);
+    }
+
+    /**
+     * Ends an ingestion taken over by {@link #claim(String, CompletableFuture)}, which the caller completed.
+     */
+    void release(String contentHash, CompletableFuture<Long> ingestion) {
+        inFlight.remove(contentHash, ingestion);
     }
 
-    private long extractTimestamp(String line) {
-        Matcher matcher = TIMESTAMP_PATTERN.matcher(line);
-        if (matcher.find()) {
-            String timestampString = matcher.group(1);
-            SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+    /**
+     * Parses the combat log and hands the relevant events to the {@link MatchStore} as they are parsed, so the log is
+     * never held in memory as a whole. Depending on {@link IngestionProperties#getParallelism()} the log is parsed
+     * line by line on the calling thread or in chunks on several threads; both produce the same events in the same
+     * order.
+     * <p>
+     * The time spent in the {@link MatchStore} is recorded as {@code dota.ingest.persist}, the rest as
+     * {@code dota.ingest.parse}. With parallel parsing the latter is only the time the store waited for parsed events.
+     * Once stored, the events are added to the {@link LeaderboardService} leaderboards.
+     *
+     * @param combatLog the combat log content, UTF-8 encoded
+     * @return the id of the match the parsed events belong to
+     * @throws IOException              if the combat log can not be read
+     * @throws IllegalArgumentException if the combat log is blank
+     */
+    public Long parseAndSave(InputStream combatLog) throws IOException {
+        return save(combatLog, null);
+    }
+
+    private Long save(InputStream combatLog, String contentHash) throws IOException {
+        long start = System.nanoTime();
+        // entries, nanos spent in the event source, nanos of those spent handing events to the store
+        long[] counts = new long[3];
+        LeaderboardService.Tally tally = new LeaderboardService.Tally();
+        long matchId = matchStore.save(consumer -> {
+            long sourceStart = System.nanoTime();
+            Consumer<CombatLogEvent> counter = event -> {
+                tally.add(event);
+                long acceptStart = System.nanoTime();
+                consumer.accept(event);
+                counts[2] += System.nanoTime() - acceptStart;
+                counts[0]++;
+            };
             try {
-                Date timestamp = dateFormat.parse(timestampString);
-                return timestamp.getTime();
-            } catch (ParseException e) {
-                //throw new RuntimeException("Error parsing timestamp: " + timestampString, e); //commented out to process i=other fields
+                boolean nonBlank = chunkedParser != null
+                        ? chunkedParser.parse(combatLog, counter)
+                        : parseLines(combatLog, counter);
+                if (!nonBlank) {
+                    throw new IllegalArgumentException("Combat log is empty");
+                }
+            } finally {
+                counts[1] = System.nanoTime() - sourceStart;
             }
+        }, contentHash);
+        leaderboardService.record(tally);
+        long total = System.nanoTime() - start;
+        long parseNanos = counts[1] - counts[2];
+        parseTimer.record(parseNanos, TimeUnit.NANOSECONDS);
+        persistTimer.record(total - parseNanos, TimeUnit.NANOSECONDS);
+        matchSizes.record(counts[0]);
+        long millis = Math.max(1, total / 1_000_000);
+        log.debug("Stored {} entries for match {} in {} ms ({} rows/s)",
+                counts[0], matchId, millis, counts[0] * 1000 / millis);
+        return matchId;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (chunkedParser != null) {
+            chunkedParser.close();
         }
+    }
 
-        return 0;
+    // the same outcome as the ingestion that was awaited, success or failure
+    static Long await(CompletableFuture<Long> ingestion) throws IOException {
+        try {
+            return ingestion.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the same combat log to be ingested");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
     }
 
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform implements SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String hex(byte[] hash) {
+        return String.format("%0" + 2 * hash.length + "x", new BigInteger(1, hash));
+    }
 
-}
\ No newline at end of file
+    private boolean parseLines(InputStream combatLog, Consumer<CombatLogEvent> consumer) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(combatLog, StandardCharsets.UTF_8));
+        CombatLogEvent event = new CombatLogEvent();
+        boolean nonBlank = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!nonBlank && !line.isBlank()) {
+                nonBlank = true;
+            }
+            if (lineParser.parse(line, event)) {
+                consumer.accept(event);
+            }
+        }
+        return nonBlank;
+    }
+}
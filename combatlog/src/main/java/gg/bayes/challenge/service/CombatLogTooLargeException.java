@@ -0,0 +1,14 @@
+package gg.bayes.challenge.service;
+
+import gg.bayes.challenge.config.IngestionProperties;
+
+/**
+ * Thrown when a combat log, once decoded, is larger than {@link IngestionProperties#getMaxBytes()}. It is a malformed
+ * upload like any other, but lets the controllers answer with 413 instead of 400.
+ */
+public class CombatLogTooLargeException extends IllegalArgumentException {
+
+    public CombatLogTooLargeException(long maxBytes) {
+        super("Combat log exceeds the maximum size of " + maxBytes + " bytes");
+    }
+}
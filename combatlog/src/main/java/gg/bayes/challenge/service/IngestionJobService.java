@@ -0,0 +1,133 @@
+package gg.bayes.challenge.service;
+
+import gg.bayes.challenge.config.IngestionProperties;
+import gg.bayes.challenge.rest.model.IngestionJob;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ingests combat logs in the background. An upload is spooled to a temporary file, so the request thread is released
+ * as soon as the body is received, and queued for a fixed pool of {@link IngestionProperties#getWorkers()} threads
+ * that run {@link CombatLogParserService#ingest(Path)}. The queue holds at most
+ * {@link IngestionProperties#getQueueCapacity()} uploads; when it is full, further uploads are refused instead of
+ * piling up.
+ * <p>
+ * Jobs are kept in memory. Only the last {@value #MAX_FINISHED_JOBS} finished jobs can be looked up.
+ */
+@Slf4j
+@Service
+public class IngestionJobService {
+    static final int MAX_FINISHED_JOBS = 1000;
+
+    private final CombatLogParserService combatLogParserService;
+    private final ThreadPoolExecutor executor;
+    private final long maxBytes;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, IngestionJob> jobs = new ConcurrentHashMap<>();
+    private final Queue<Long> finishedJobs = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger finishedJobCount = new AtomicInteger();
+
+    @Autowired
+    public IngestionJobService(CombatLogParserService combatLogParserService,
+                               IngestionProperties ingestionProperties) {
+        this.combatLogParserService = combatLogParserService;
+        this.maxBytes = ingestionProperties.getMaxBytes();
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                ingestionProperties.getWorkers(), ingestionProperties.getWorkers(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(ingestionProperties.getQueueCapacity()),
+                runnable -> new Thread(runnable, "ingest-" + threads.incrementAndGet()));
+    }
+
+    /**
+     * Queues the combat log for ingestion.
+     *
+     * @param combatLog the combat log content, UTF-8 encoded
+     * @return the queued job
+     * @throws IOException                if the combat log can not be spooled
+     * @throws CombatLogTooLargeException if the combat log is larger than {@link IngestionProperties#getMaxBytes()}
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public IngestionJob submit(InputStream combatLog) throws IOException {
+        // cheap check before the upload is read, the actual limit is enforced by the executor
+        if (executor.getQueue().remainingCapacity() == 0) {
+            throw new RejectedExecutionException("Ingestion queue is full");
+        }
+        Path spool = Files.createTempFile("combatlog-", ".log");
+        try {
+            Files.copy(new SizeLimitedInputStream(combatLog, maxBytes), spool, StandardCopyOption.REPLACE_EXISTING);
+            IngestionJob job = new IngestionJob(sequence.incrementAndGet(), IngestionJob.Status.QUEUED, null, null);
+            jobs.put(job.getId(), job);
+            try {
+                executor.execute(() -> ingest(job.getId(), spool));
+            } catch (RejectedExecutionException e) {
+                jobs.remove(job.getId());
+                throw e;
+            }
+            return job;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+    }
+
+    public Optional<IngestionJob> getJob(Long jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("{} queued combat logs were not ingested", executor.shutdownNow().size());
+        }
+    }
+
+    private void ingest(Long jobId, Path spool) {
+        jobs.put(jobId, new IngestionJob(jobId, IngestionJob.Status.RUNNING, null, null));
+        IngestionJob result;
+        try {
+            Long matchId = combatLogParserService.ingest(spool);
+            result = new IngestionJob(jobId, IngestionJob.Status.DONE, matchId, null);
+        } catch (IllegalArgumentException e) {
+            result = new IngestionJob(jobId, IngestionJob.Status.FAILED, null, e.getMessage());
+        } catch (Exception e) {
+            log.error("Failed to ingest the combat log of job {}", jobId, e);
+            result = new IngestionJob(jobId, IngestionJob.Status.FAILED, null, "Failed to ingest the combat log");
+        } finally {
+            try {
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                log.warn("Failed to delete {}", spool, e);
+            }
+        }
+        jobs.put(jobId, result);
+        finishedJobs.add(jobId);
+        if (finishedJobCount.incrementAndGet() > MAX_FINISHED_JOBS) {
+            Long oldest = finishedJobs.poll();
+            if (oldest != null) {
+                finishedJobCount.decrementAndGet();
+                jobs.remove(oldest);
+            }
+        }
+    }
+}
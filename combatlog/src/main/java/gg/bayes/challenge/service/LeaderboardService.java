@@ -0,0 +1,222 @@
+package gg.bayes.challenge.service;
+
+import gg.bayes.challenge.config.SnapshotProperties;
+import gg.bayes.challenge.rest.model.HeroSummary;
+import gg.bayes.challenge.rest.model.LeaderboardEntry;
+import gg.bayes.challenge.service.parser.CombatLogEvent;
+import gg.bayes.challenge.service.store.MatchStore;
+import gg.bayes.challenge.service.store.TimeRange;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Leaderboards across all stored matches: kills per hero, casts per spell and damage dealt per hero. Every ingestion
+ * path adds the {@link Tally} of the events it stored, and deleting a match subtracts its statistics, so a leaderboard
+ * is always read from counters and never from the events.
+ * <p>
+ * The counters are {@link LongAdder}s, one per name, so concurrent ingestions do not contend on them. There is one
+ * counter per hero or spell, a few hundred in total, and a read only keeps the top entries while going over them.
+ * <p>
+ * With {@link SnapshotProperties#getDirectory()} set, the totals are written next to the match snapshots on shutdown,
+ * see {@link LeaderboardSnapshot}, and read back at startup if they count the matches that are stored, so a restart
+ * does not go over the events. Otherwise, or if they are missing or were written for other matches, the counters are
+ * rebuilt from the stored matches, one pass over the events of each, so they always agree with what the store kept
+ * across the restart.
+ */
+@Slf4j
+@Service
+public class LeaderboardService {
+    private static final Comparator<Map.Entry<String, Long>> RANKING =
+            Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+
+    public enum Board {
+        KILLS,
+        SPELLS,
+        DAMAGE
+    }
+
+    private final MatchStore matchStore;
+    private final LeaderboardSnapshot snapshot;
+    private final Map<Board, ConcurrentHashMap<String, LongAdder>> boards = new EnumMap<>(Board.class);
+
+    @Autowired
+    public LeaderboardService(MatchStore matchStore, SnapshotProperties snapshotProperties) {
+        this.matchStore = matchStore;
+        this.snapshot = snapshotProperties.getDirectory() != null
+                ? new LeaderboardSnapshot(snapshotProperties.getDirectory())
+                : null;
+        for (Board board : Board.values()) {
+            boards.put(board, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Adds the statistics of every stored match to the counters, from the totals written on shutdown if they count
+     * the stored matches, from the events of the matches otherwise.
+     */
+    @PostConstruct
+    public void load() {
+        long start = System.nanoTime();
+        List<Long> matchIds = matchStore.getMatchIds();
+        Optional<Map<Board, Map<String, Long>>> stored = Optional.empty();
+        if (snapshot != null) {
+            try {
+                stored = snapshot.take(matchIds);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Can not read the stored leaderboards, rebuilding them", e);
+            }
+        }
+        if (stored.isPresent()) {
+            stored.get().forEach((board, totals) -> totals.forEach((name, total) -> counter(board, name).add(total)));
+            log.info("Loaded the leaderboards of {} matches in {} ms",
+                    matchIds.size(), (System.nanoTime() - start) / 1_000_000);
+            return;
+        }
+        for (long matchId : matchIds) {
+            tally(matchId).ifPresent(tally -> add(tally, 1));
+        }
+        log.info("Rebuilt the leaderboards from {} matches in {} ms",
+                matchIds.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * @return the {@code limit} names with the highest totals, highest first, ties ordered by name
+     */
+    public List<LeaderboardEntry> top(Board board, int limit) {
+        PriorityQueue<Map.Entry<String, Long>> top = new PriorityQueue<>(limit + 1, RANKING.reversed());
+        boards.get(board).forEach((name, counter) -> {
+            long total = counter.sum();
+            if (total > 0) {
+                top.add(Map.entry(name, total));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+        });
+        List<Map.Entry<String, Long>> ranked = new ArrayList<>(top);
+        ranked.sort(RANKING);
+        List<LeaderboardEntry> result = new ArrayList<>(ranked.size());
+        ranked.forEach(entry -> result.add(new LeaderboardEntry(entry.getKey(), entry.getValue())));
+        return result;
+    }
+
+    /**
+     * Adds the events of a stored match, or of a segment appended to one.
+     */
+    public void record(Tally tally) {
+        add(tally, 1);
+    }
+
+    /**
+     * Subtracts the events of a deleted match, as taken by {@link #tally(long)} before it was deleted.
+     */
+    public void remove(Tally tally) {
+        add(tally, -1);
+    }
+
+    /**
+     * @return the events of the stored match, as they were added to the counters, from a single pass over them; empty
+     * if the match does not exist
+     */
+    public Optional<Tally> tally(long matchId) {
+        return matchStore.getSummary(matchId, TimeRange.ALL).map(summary -> {
+            Tally tally = new Tally();
+            for (HeroSummary hero : summary) {
+                String name = hero.getHero();
+                tally.addKills(name, hero.getKills());
+                hero.getSpells().forEach(spell -> tally.addSpellCasts(spell.getSpell(), spell.getCasts()));
+                hero.getDamage().forEach(dealt -> tally.addDamage(name, dealt.getTotalDamage()));
+            }
+            return tally;
+        });
+    }
+
+    /**
+     * Writes the totals next to the match snapshots, if there are, for the next start. Spring stops the web server and
+     * closes the ingestion services, which depend on this one, before, so no match is stored meanwhile; if one is,
+     * the ids no longer match and the next start rebuilds the counters.
+     */
+    @PreDestroy
+    public void close() {
+        if (snapshot == null) {
+            return;
+        }
+        List<Long> matchIds = matchStore.getMatchIds();
+        Map<Board, Map<String, Long>> totals = new EnumMap<>(Board.class);
+        boards.forEach((board, counters) -> {
+            Map<String, Long> boardTotals = new HashMap<>();
+            counters.forEach((name, counter) -> boardTotals.put(name, counter.sum()));
+            totals.put(board, boardTotals);
+        });
+        try {
+            snapshot.write(matchIds, totals);
+            log.debug("Stored the leaderboards of {} matches", matchIds.size());
+        } catch (IOException e) {
+            log.warn("Failed to store the leaderboards, they are rebuilt at the next start", e);
+        }
+    }
+
+    private void add(Tally tally, int sign) {
+        tally.counts.forEach((board, totals) -> totals.forEach(
+                (name, total) -> counter(board, name).add(sign * total[0])));
+    }
+
+    private LongAdder counter(Board board, String name) {
+        return boards.get(board).computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * The contribution of one match, or of one segment of it, to the leaderboards, collected while its events are
+     * stored and added to the shared counters at once. Not thread safe.
+     */
+    public static class Tally {
+        private final Map<Board, Map<String, long[]>> counts = new EnumMap<>(Board.class);
+
+        public void add(CombatLogEvent event) {
+            switch (event.getType()) {
+                case HERO_KILLED:
+                    addKills(event.getActor(), 1);
+                    break;
+                case SPELL_CAST:
+                    addSpellCasts(event.getAbility(), 1);
+                    break;
+                case DAMAGE_DONE:
+                    addDamage(event.getActor(), event.getDamage());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        public void addKills(String hero, long kills) {
+            total(Board.KILLS, hero)[0] += kills;
+        }
+
+        public void addSpellCasts(String spell, long casts) {
+            total(Board.SPELLS, spell)[0] += casts;
+        }
+
+        public void addDamage(String hero, long damage) {
+            total(Board.DAMAGE, hero)[0] += damage;
+        }
+
+        private long[] total(Board board, String name) {
+            return counts.computeIfAbsent(board, key -> new HashMap<>()).computeIfAbsent(name, key -> new long[1]);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package gg.bayes.challenge.service;
+
+import gg.bayes.challenge.service.LeaderboardService.Board;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The {@code leaderboards} file of the snapshot directory: the leaderboard totals as they were on shutdown, with the
+ * number and the hash of the ids of the matches they count, so {@link LeaderboardService} can start from them instead
+ * of going over every stored match. Totals written for other matches than those stored are ignored.
+ * <p>
+ * The file is written to a temporary file that is then renamed, and deleted once read, so after a crash the totals are
+ * rebuilt rather than read back without the changes made since the last start.
+ */
+class LeaderboardSnapshot {
+    private static final String FILE = "leaderboards";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path file;
+
+    LeaderboardSnapshot(Path directory) {
+        this.file = directory.resolve(FILE);
+    }
+
+    /**
+     * Reads and deletes the file.
+     *
+     * @param matchIds the ids of the stored matches, in ascending order
+     * @return the totals per board and name, empty if there is no file or it was written for other matches
+     * @throws IOException              if the file can not be read
+     * @throws IllegalArgumentException if the file names an unknown board
+     */
+    Optional<Map<Board, Map<String, Long>>> take(List<Long> matchIds) throws IOException {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != matchIds.size() || in.readInt() != matchIds.hashCode()) {
+                return Optional.empty();
+            }
+            Map<Board, Map<String, Long>> totals = new EnumMap<>(Board.class);
+            for (int entries = in.readInt(); entries > 0; entries--) {
+                Board board = Board.valueOf(in.readUTF());
+                totals.computeIfAbsent(board, key -> new HashMap<>()).put(in.readUTF(), in.readLong());
+            }
+            return Optional.of(totals);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Durably replaces the file.
+     *
+     * @param matchIds the ids of the matches the totals count, in ascending order
+     */
+    void write(List<Long> matchIds, Map<Board, Map<String, Long>> totals) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temporary = file.resolveSibling(FILE + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            out.writeInt(matchIds.size());
+            out.writeInt(matchIds.hashCode());
+            out.writeInt(totals.values().stream().mapToInt(Map::size).sum());
+            for (Map.Entry<Board, Map<String, Long>> board : totals.entrySet()) {
+                for (Map.Entry<String, Long> total : board.getValue().entrySet()) {
+                    out.writeUTF(board.getKey().name());
+                    out.writeUTF(total.getKey());
+                    out.writeLong(total.getValue());
+                }
+            }
+            out.flush();
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
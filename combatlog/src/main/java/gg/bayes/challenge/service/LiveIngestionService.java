@@ -0,0 +1,270 @@
+package gg.bayes.challenge.service;
+
+import gg.bayes.challenge.config.IngestionProperties;
+import gg.bayes.challenge.rest.model.HeroSummary;
+import gg.bayes.challenge.service.parser.CombatLogEvent;
+import gg.bayes.challenge.service.parser.CombatLogLineParser;
+import gg.bayes.challenge.service.store.MatchStore;
+import gg.bayes.challenge.service.store.TimeRange;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Ingests matches while they are played, from segments of their combat log. A segment does not have to end at a line
+ * end: the unterminated rest of a segment is kept and completed by the next one, so lines cut by the collector are
+ * parsed whole. The rest of the last segment is parsed when the match is marked complete. A line longer than
+ * {@link IngestionProperties#getMaxLineLength()} is skipped up to its end instead of being buffered.
+ * <p>
+ * Segments of the same match are appended one at a time, in the order they arrive; segments of different matches are
+ * appended concurrently. State is only kept for the matches with an unterminated rest, at most a line per match, and
+ * is dropped when the match is complete or deleted.
+ * <p>
+ * The changes of every appended segment are published to the subscribers of the match, see
+ * {@link MatchUpdatePublisher}.
+ */
+@Slf4j
+@Service
+public class LiveIngestionService {
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private final MatchStore matchStore;
+    private final CombatLogLineParser lineParser;
+    private final MatchUpdatePublisher publisher;
+    private final LeaderboardService leaderboardService;
+    private final int maxLineLength;
+    private final Map<Long, LiveMatch> liveMatches = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LiveIngestionService(MatchStore matchStore, CombatLogLineParser lineParser,
+                               MatchUpdatePublisher publisher, IngestionProperties ingestionProperties,
+                               LeaderboardService leaderboardService) {
+        this.matchStore = matchStore;
+        this.lineParser = lineParser;
+        this.publisher = publisher;
+        this.maxLineLength = ingestionProperties.getMaxLineLength();
+        this.leaderboardService = leaderboardService;
+    }
+
+    /**
+     * Creates a match without events, to be filled with {@link #append(long, InputStream, boolean)}.
+     *
+     * @return the id of the new match
+     */
+    public long start() throws IOException {
+        return matchStore.save(consumer -> { });
+    }
+
+    /**
+     * Parses the segment and appends its events to the match. If storing them fails, the segment is dropped as a whole
+     * and may be sent again.
+     *
+     * @param matchId  the match the segment belongs to
+     * @param segment  the next bytes of the combat log, UTF-8 encoded
+     * @param complete whether this is the last segment, in which case an unterminated last line is parsed as well
+     * @return {@code false} if the match does not exist
+     * @throws IOException if the segment can not be read
+     */
+    public boolean append(long matchId, InputStream segment, boolean complete) throws IOException {
+        while (true) {
+            LiveMatch live = liveMatches.computeIfAbsent(matchId, id -> new LiveMatch());
+            synchronized (live) {
+                if (live.closed) {
+                    // completed or forgotten while we waited, start over with a fresh state
+                    continue;
+                }
+                LiveMatch rest = new LiveMatch();
+                MatchDelta delta = publisher.hasSubscribers(matchId) ? new MatchDelta() : null;
+                LeaderboardService.Tally tally = new LeaderboardService.Tally();
+                boolean appended = matchStore.append(matchId, consumer -> {
+                    Consumer<CombatLogEvent> target = event -> {
+                        if (delta != null) {
+                            delta.add(event);
+                        }
+                        tally.add(event);
+                        consumer.accept(event);
+                    };
+                    parseLines(live, segment, complete, target, rest);
+                });
+                if (appended) {
+                    leaderboardService.record(tally);
+                }
+                if (appended && delta != null) {
+                    publisher.publish(matchId, delta);
+                }
+                if (!appended || complete) {
+                    forget(matchId, live);
+                } else {
+                    live.rest = rest.rest;
+                    live.skipping = rest.skipping;
+                    release(matchId, live);
+                }
+                return appended;
+            }
+        }
+    }
+
+    /**
+     * Subscribes to the changes of the match. The subscriber gets the current statistics of the match first, taken
+     * while no segment is being appended, so that no change is missed or counted twice.
+     *
+     * @return the subscription, empty if the match does not exist
+     */
+    public Optional<MatchUpdatePublisher.Subscription> subscribe(long matchId,
+                                                                 MatchUpdatePublisher.MatchSubscriber subscriber) {
+        while (true) {
+            LiveMatch live = liveMatches.computeIfAbsent(matchId, id -> new LiveMatch());
+            synchronized (live) {
+                if (live.closed) {
+                    continue;
+                }
+                try {
+                    Optional<MatchDelta> snapshot = snapshot(matchId);
+                    if (snapshot.isEmpty()) {
+                        forget(matchId, live);
+                        return Optional.empty();
+                    }
+                    return Optional.of(publisher.subscribe(matchId, subscriber, snapshot.get()));
+                } finally {
+                    release(matchId, live);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the match and takes its events off the leaderboards, while no segment is being appended to it, so the
+     * events subtracted are exactly the ones deleted. Drops the unparsed rest kept for the match and ends its
+     * subscriptions.
+     *
+     * @return {@code false} if the match does not exist
+     */
+    public boolean delete(long matchId) {
+        while (true) {
+            LiveMatch live = liveMatches.computeIfAbsent(matchId, id -> new LiveMatch());
+            synchronized (live) {
+                if (live.closed) {
+                    continue;
+                }
+                try {
+                    Optional<LeaderboardService.Tally> tally = leaderboardService.tally(matchId);
+                    boolean deleted = matchStore.delete(matchId);
+                    if (deleted) {
+                        tally.ifPresent(leaderboardService::remove);
+                    }
+                    return deleted;
+                } finally {
+                    forget(matchId, live);
+                }
+            }
+        }
+    }
+
+    private void forget(long matchId, LiveMatch live) {
+        live.closed = true;
+        liveMatches.remove(matchId, live);
+        publisher.complete(matchId);
+    }
+
+    /**
+     * @return the number of matches state is kept for
+     */
+    int trackedMatches() {
+        return liveMatches.size();
+    }
+
+    // drops the state of a match that keeps no rest, it is the same as no state at all
+    private void release(long matchId, LiveMatch live) {
+        if (!live.closed && live.rest.length == 0 && !live.skipping) {
+            live.closed = true;
+            liveMatches.remove(matchId, live);
+        }
+    }
+
+    // the statistics of the match from a single pass over its events
+    private Optional<MatchDelta> snapshot(long matchId) {
+        return matchStore.getSummary(matchId, TimeRange.ALL).map(summary -> {
+            MatchDelta snapshot = new MatchDelta();
+            for (HeroSummary hero : summary) {
+                String name = hero.getHero();
+                snapshot.addKills(name, hero.getKills());
+                hero.getSpells().forEach(spell -> snapshot.addSpellCasts(name, spell.getSpell(), spell.getCasts()));
+                snapshot.addItems(name, hero.getItems());
+                hero.getDamage().forEach(dealt -> snapshot.addDamage(
+                        name, dealt.getTarget(), dealt.getDamageInstances(), dealt.getTotalDamage()));
+            }
+            return snapshot;
+        });
+    }
+
+    /**
+     * Parses the lines of the rest kept in {@code live} followed by {@code segment}. Lines are cut at {@code \n} bytes,
+     * which never occur inside a UTF-8 encoded character, so a character split between two segments is decoded whole.
+     * The bytes after the last line end, none if {@code complete}, are left in {@code rest}.
+     */
+    private void parseLines(LiveMatch live, InputStream segment, boolean complete, Consumer<CombatLogEvent> consumer,
+                            LiveMatch rest) throws IOException {
+        CombatLogEvent event = new CombatLogEvent();
+        byte[] line = Arrays.copyOf(live.rest, Math.min(maxLineLength, Math.max(256, live.rest.length * 2)));
+        int length = live.rest.length;
+        boolean skipping = live.skipping;
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = segment.read(buffer)) >= 0) {
+            for (int i = 0; i < read; i++) {
+                byte b = buffer[i];
+                if (b == '\n') {
+                    if (!skipping) {
+                        parseLine(line, length, event, consumer);
+                    }
+                    length = 0;
+                    skipping = false;
+                } else if (!skipping) {
+                    if (length == maxLineLength) {
+                        log.debug("Skipping a combat log line longer than {} bytes", maxLineLength);
+                        skipping = true;
+                        length = 0;
+                        continue;
+                    }
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, (int) Math.min(maxLineLength, length * 2L));
+                    }
+                    line[length++] = b;
+                }
+            }
+        }
+        if (complete) {
+            if (!skipping) {
+                parseLine(line, length, event, consumer);
+            }
+            return;
+        }
+        rest.rest = Arrays.copyOf(line, length);
+        rest.skipping = skipping;
+    }
+
+    private void parseLine(byte[] line, int length, CombatLogEvent event, Consumer<CombatLogEvent> consumer) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        if (lineParser.parse(new String(line, 0, length, StandardCharsets.UTF_8), event)) {
+            consumer.accept(event);
+        }
+    }
+
+    private static final class LiveMatch {
+        private byte[] rest = NO_BYTES;
+        // whether the rest belongs to a line too long to be kept, skipped up to its end
+        private boolean skipping;
+        private boolean closed;
+    }
+}
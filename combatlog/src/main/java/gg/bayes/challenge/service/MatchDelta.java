@@ -0,0 +1,108 @@
+package gg.bayes.challenge.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import gg.bayes.challenge.rest.model.HeroDamage;
+import gg.bayes.challenge.rest.model.HeroItem;
+import gg.bayes.challenge.service.parser.CombatLogEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What changed in a match: kills per hero, spell casts per hero and spell, damage per attacking and damaged hero, and
+ * the items bought per hero. Deltas of consecutive segments are merged by adding them up, so the size of a delta is
+ * bounded by the number of heroes, spells and hero pairs, plus the items bought meanwhile.
+ * <p>
+ * Not thread safe.
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class MatchDelta {
+    private final Map<String, Integer> kills = new TreeMap<>();
+    private final Map<String, Map<String, Integer>> spells = new TreeMap<>();
+    private final Map<String, Map<String, int[]>> damage = new TreeMap<>();
+    private final Map<String, List<HeroItem>> items = new TreeMap<>();
+
+    public void add(CombatLogEvent event) {
+        switch (event.getType()) {
+            case HERO_KILLED:
+                addKills(event.getActor(), 1);
+                break;
+            case SPELL_CAST:
+                addSpellCasts(event.getActor(), event.getAbility(), 1);
+                break;
+            case DAMAGE_DONE:
+                addDamage(event.getActor(), event.getTarget(), 1, event.getDamage());
+                break;
+            case ITEM_PURCHASED:
+                items.computeIfAbsent(event.getActor(), hero -> new ArrayList<>())
+                        .add(new HeroItem(event.getItem(), event.getTimestamp()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    public void addKills(String hero, int count) {
+        kills.merge(hero, count, Integer::sum);
+    }
+
+    public void addSpellCasts(String hero, String spell, int casts) {
+        spells.computeIfAbsent(hero, key -> new TreeMap<>()).merge(spell, casts, Integer::sum);
+    }
+
+    public void addDamage(String actor, String target, int instances, int total) {
+        int[] sums = damage.computeIfAbsent(actor, key -> new TreeMap<>()).computeIfAbsent(target, key -> new int[2]);
+        sums[0] += instances;
+        sums[1] += total;
+    }
+
+    public void addItems(String hero, List<HeroItem> bought) {
+        items.computeIfAbsent(hero, key -> new ArrayList<>()).addAll(bought);
+    }
+
+    /**
+     * Adds the changes of {@code other} to this delta.
+     */
+    public void merge(MatchDelta other) {
+        other.kills.forEach(this::addKills);
+        other.spells.forEach((hero, casts) -> casts.forEach((spell, count) -> addSpellCasts(hero, spell, count)));
+        other.damage.forEach((actor, targets) -> targets.forEach(
+                (target, sums) -> addDamage(actor, target, sums[0], sums[1])));
+        other.items.forEach(this::addItems);
+    }
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return kills.isEmpty() && spells.isEmpty() && damage.isEmpty() && items.isEmpty();
+    }
+
+    public Map<String, Integer> getKills() {
+        return kills;
+    }
+
+    public Map<String, Map<String, Integer>> getSpells() {
+        return spells;
+    }
+
+    /**
+     * @return per attacking hero, the damage it did to each hero, the damaged hero in the {@code target} field
+     */
+    @JsonProperty("damage")
+    public Map<String, List<HeroDamage>> getDamage() {
+        Map<String, List<HeroDamage>> result = new TreeMap<>();
+        damage.forEach((actor, targets) -> {
+            List<HeroDamage> list = new ArrayList<>(targets.size());
+            targets.forEach((target, sums) -> list.add(new HeroDamage(target, sums[0], sums[1])));
+            result.put(actor, list);
+        });
+        return result;
+    }
+
+    public Map<String, List<HeroItem>> getItems() {
+        return items;
+    }
+}
@@ -1,31 +1,85 @@
 package gg.bayes.challenge.service;
 
-import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
-import gg.bayes.challenge.persistence.model.MatchEntity;
-import gg.bayes.challenge.persistence.repository.CombatLogEntryRepository;
-import gg.bayes.challenge.persistence.repository.MatchRepository;
+import gg.bayes.challenge.rest.model.HeroDamage;
+import gg.bayes.challenge.rest.model.HeroItem;
+import gg.bayes.challenge.rest.model.HeroKills;
+import gg.bayes.challenge.rest.model.HeroSpells;
+import gg.bayes.challenge.rest.model.HeroSummary;
+import gg.bayes.challenge.rest.model.TimelineEvent;
+import gg.bayes.challenge.service.store.MatchStore;
+import gg.bayes.challenge.service.store.TimeRange;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * Read side of the matches, served by the configured {@link MatchStore}. Every method returns an empty
+ * {@link Optional} if the match does not exist. The methods taking a {@link TimeRange} only consider the events in that
+ * window of the match.
+ */
 @Service
 public class MatchService {
-    private final MatchRepository matchRepository;
+    private final MatchStore matchStore;
+    private final LiveIngestionService liveIngestionService;
 
     @Autowired
-    public MatchService(MatchRepository matchRepository) {
-        this.matchRepository = matchRepository;
+    public MatchService(MatchStore matchStore, LiveIngestionService liveIngestionService) {
+        this.matchStore = matchStore;
+        this.liveIngestionService = liveIngestionService;
     }
 
-    public Optional<MatchEntity> findById(Long matchId) {
-        return matchRepository.findById(matchId);
+    public Optional<List<HeroKills>> getHeroKills(Long matchId) {
+        return getHeroKills(matchId, TimeRange.ALL);
     }
-}
\ No newline at end of file
+
+    public Optional<List<HeroItem>> getHeroItems(Long matchId, String heroName) {
+        return getHeroItems(matchId, heroName, TimeRange.ALL);
+    }
+
+    public Optional<List<HeroSpells>> getHeroSpells(Long matchId, String heroName) {
+        return getHeroSpells(matchId, heroName, TimeRange.ALL);
+    }
+
+    public Optional<List<HeroDamage>> getHeroDamages(Long matchId, String heroName) {
+        return getHeroDamages(matchId, heroName, TimeRange.ALL);
+    }
+
+    public Optional<List<HeroKills>> getHeroKills(Long matchId, TimeRange range) {
+        return matchStore.getHeroKills(matchId, range);
+    }
+
+    public Optional<List<HeroItem>> getHeroItems(Long matchId, String heroName, TimeRange range) {
+        return matchStore.getHeroItems(matchId, heroName, range);
+    }
+
+    public Optional<List<HeroSpells>> getHeroSpells(Long matchId, String heroName, TimeRange range) {
+        return matchStore.getHeroSpells(matchId, heroName, range);
+    }
+
+    public Optional<List<HeroDamage>> getHeroDamages(Long matchId, String heroName, TimeRange range) {
+        return matchStore.getHeroDamages(matchId, heroName, range);
+    }
+
+    public Optional<List<TimelineEvent>> getTimeline(Long matchId, TimeRange range) {
+        return matchStore.getTimeline(matchId, range);
+    }
+
+    /**
+     * @return the statistics of every hero of the match at once, as the per hero methods would return them
+     */
+    public Optional<List<HeroSummary>> getSummary(Long matchId, TimeRange range) {
+        return matchStore.getSummary(matchId, range);
+    }
+
+    /**
+     * Deletes the match and all of its statistics, and takes them off the leaderboards. Segments being appended to the
+     * match are waited for, see {@link LiveIngestionService#delete(long)}.
+     *
+     * @return {@code false} if the match does not exist
+     */
+    public boolean deleteMatch(Long matchId) {
+        return liveIngestionService.delete(matchId);
+    }
+}
@@ -0,0 +1,195 @@
+package gg.bayes.challenge.service;
+
+import gg.bayes.challenge.config.StreamProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes the changes of live matches to their subscribers. Every subscriber first gets a {@code snapshot} of the
+ * match, then {@code delta} updates with what was appended since, and a {@code complete} event once the last segment
+ * is appended or the match is deleted.
+ * <p>
+ * Each subscriber has its own pending delta. Deltas published meanwhile are merged into it, and it is sent at most once
+ * per {@link StreamProperties#getInterval()}, by one of {@link StreamProperties#getSenders()} threads. A subscriber is
+ * never sent to concurrently: while a send to a slow client is in progress its deltas keep being merged, so a slow
+ * client receives fewer, larger updates and holds no more than one pending delta.
+ */
+@Slf4j
+@Service
+public class MatchUpdatePublisher {
+    private final ScheduledExecutorService senders;
+    private final long intervalNanos;
+    private final Map<Long, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MatchUpdatePublisher(StreamProperties streamProperties) {
+        AtomicInteger threads = new AtomicInteger();
+        this.senders = Executors.newScheduledThreadPool(streamProperties.getSenders(), runnable -> {
+            Thread thread = new Thread(runnable, "match-stream-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.intervalNanos = streamProperties.getInterval().toNanos();
+    }
+
+    public boolean hasSubscribers(long matchId) {
+        return subscriptions.containsKey(matchId);
+    }
+
+    /**
+     * Subscribes to the updates of a match. Must not race with {@link #publish(long, MatchDelta)} for the same match,
+     * or the snapshot and the first delta may overlap, see {@link LiveIngestionService#subscribe}.
+     *
+     * @param snapshot the current statistics of the match, sent first
+     */
+    public Subscription subscribe(long matchId, MatchSubscriber subscriber, MatchDelta snapshot) {
+        Subscription subscription = new Subscription(matchId, subscriber, snapshot);
+        subscriptions.computeIfAbsent(matchId, id -> ConcurrentHashMap.newKeySet()).add(subscription);
+        subscription.schedule();
+        return subscription;
+    }
+
+    /**
+     * Queues the changes for every subscriber of the match.
+     */
+    public void publish(long matchId, MatchDelta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        Set<Subscription> subscribers = subscriptions.get(matchId);
+        if (subscribers != null) {
+            subscribers.forEach(subscription -> subscription.offer(delta));
+        }
+    }
+
+    /**
+     * Sends what is pending and ends every subscription of the match.
+     */
+    public void complete(long matchId) {
+        Set<Subscription> subscribers = subscriptions.remove(matchId);
+        if (subscribers != null) {
+            subscribers.forEach(Subscription::finish);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+    }
+
+    /**
+     * Receives the updates of a match, e.g. a server-sent events stream.
+     */
+    public interface MatchSubscriber {
+
+        void send(String event, Object data) throws IOException;
+
+        void complete();
+    }
+
+    public final class Subscription {
+        private final long matchId;
+        private final MatchSubscriber subscriber;
+        // all guarded by this
+        private MatchDelta pending;
+        private boolean snapshotSent;
+        private boolean scheduled;
+        private boolean finishing;
+        private boolean cancelled;
+        private long lastSent;
+
+        private Subscription(long matchId, MatchSubscriber subscriber, MatchDelta snapshot) {
+            this.matchId = matchId;
+            this.subscriber = subscriber;
+            this.pending = snapshot;
+            this.lastSent = System.nanoTime() - intervalNanos;
+        }
+
+        /**
+         * Stops the updates, to be called when the client is gone.
+         */
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                pending = null;
+            }
+            subscriptions.computeIfPresent(matchId, (id, subscribers) -> {
+                subscribers.remove(this);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+
+        private synchronized void offer(MatchDelta delta) {
+            if (cancelled || finishing) {
+                return;
+            }
+            if (pending == null) {
+                pending = new MatchDelta();
+            }
+            pending.merge(delta);
+            schedule();
+        }
+
+        private synchronized void finish() {
+            if (!cancelled) {
+                finishing = true;
+                schedule();
+            }
+        }
+
+        // stays scheduled until the send is done, so there is a single send in flight
+        private synchronized void schedule() {
+            if (scheduled || cancelled || senders.isShutdown()) {
+                return;
+            }
+            scheduled = true;
+            long delay = Math.max(0, lastSent + intervalNanos - System.nanoTime());
+            senders.schedule(this::send, delay, TimeUnit.NANOSECONDS);
+        }
+
+        private void send() {
+            MatchDelta delta;
+            String event;
+            boolean finished;
+            synchronized (this) {
+                delta = pending;
+                pending = null;
+                event = snapshotSent ? "delta" : "snapshot";
+                snapshotSent = true;
+                finished = finishing;
+            }
+            try {
+                if (delta != null) {
+                    subscriber.send(event, delta);
+                }
+                if (finished) {
+                    subscriber.send("complete", matchId);
+                    subscriber.complete();
+                    cancel();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("Dropping subscriber of match {}", matchId, e);
+                cancel();
+                subscriber.complete();
+            }
+            synchronized (this) {
+                lastSent = System.nanoTime();
+                scheduled = false;
+                if (pending != null || (finishing && !finished)) {
+                    schedule();
+                }
+            }
+        }
+    }
+}
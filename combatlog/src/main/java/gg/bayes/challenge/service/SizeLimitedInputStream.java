@@ -0,0 +1,56 @@
+package gg.bayes.challenge.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails with a {@link CombatLogTooLargeException} as soon as more than {@code maxBytes} are read, so an upload is never
+ * spooled or parsed further than the limit, however well it compresses.
+ */
+class SizeLimitedInputStream extends FilterInputStream {
+    private final long maxBytes;
+    private long read;
+
+    SizeLimitedInputStream(InputStream in, long maxBytes) {
+        super(in);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            count(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long n) {
+        read += n;
+        if (read > maxBytes) {
+            throw new CombatLogTooLargeException(maxBytes);
+        }
+    }
+}
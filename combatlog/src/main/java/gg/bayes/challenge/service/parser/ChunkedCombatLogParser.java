@@ -0,0 +1,174 @@
+package gg.bayes.challenge.service.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Parses a combat log on several threads. The log is read in chunks of about {@code chunkSize} bytes that end at a
+ * line end, each chunk is parsed on a dedicated {@link ForkJoinPool}, and the events are handed to the consumer on the
+ * calling thread in the order of the log, exactly as a line by line parse would produce them.
+ * <p>
+ * At most {@code 2 * parallelism} chunks are read ahead, so the memory used does not grow with the size of the log.
+ * Line ends are {@code \n}, {@code \r} or {@code \r\n}, as for {@link java.io.BufferedReader#readLine()}. Chunks are only
+ * cut after a {@code \n} byte, which never occurs inside a multi byte UTF-8 sequence.
+ */
+public class ChunkedCombatLogParser implements AutoCloseable {
+    private final CombatLogLineParser lineParser;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int maxPendingChunks;
+
+    public ChunkedCombatLogParser(CombatLogLineParser lineParser, int parallelism, int chunkSize) {
+        this.lineParser = lineParser;
+        this.pool = new ForkJoinPool(parallelism);
+        this.chunkSize = chunkSize;
+        this.maxPendingChunks = 2 * parallelism;
+    }
+
+    /**
+     * Parses the whole log and hands every supported event to {@code consumer}, in log order. Unlike with
+     * {@link CombatLogLineParser#parse(String, CombatLogEvent)}, each event is a separate instance.
+     *
+     * @param combatLog the combat log content, UTF-8 encoded
+     * @param consumer  receives the events on the calling thread
+     * @return {@code true} if the log contains at least one non blank line
+     * @throws IOException if the combat log can not be read or the parse is interrupted
+     */
+    public boolean parse(InputStream combatLog, Consumer<CombatLogEvent> consumer) throws IOException {
+        ChunkReader reader = new ChunkReader(combatLog, chunkSize);
+        Deque<Future<ParsedChunk>> pending = new ArrayDeque<>();
+        boolean nonBlank = false;
+        try {
+            byte[] chunk;
+            while ((chunk = reader.next()) != null) {
+                byte[] bytes = chunk;
+                pending.add(pool.submit(() -> parseChunk(bytes)));
+                if (pending.size() >= maxPendingChunks) {
+                    nonBlank |= emit(pending.remove(), consumer);
+                }
+            }
+            while (!pending.isEmpty()) {
+                nonBlank |= emit(pending.remove(), consumer);
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+        }
+        return nonBlank;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private static boolean emit(Future<ParsedChunk> future, Consumer<CombatLogEvent> consumer) throws IOException {
+        ParsedChunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing the combat log");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IOException("Failed to parse the combat log", e.getCause());
+        }
+        chunk.events.forEach(consumer);
+        return chunk.nonBlank;
+    }
+
+    private ParsedChunk parseChunk(byte[] bytes) {
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        ParsedChunk chunk = new ParsedChunk();
+        CombatLogEvent event = new CombatLogEvent();
+        int start = 0;
+        while (start < text.length()) {
+            int end = start;
+            while (end < text.length() && text.charAt(end) != '\n' && text.charAt(end) != '\r') {
+                end++;
+            }
+            String line = text.substring(start, end);
+            if (!chunk.nonBlank && !line.isBlank()) {
+                chunk.nonBlank = true;
+            }
+            if (lineParser.parse(line, event)) {
+                chunk.events.add(event);
+                event = new CombatLogEvent();
+            }
+            if (end + 1 < text.length() && text.charAt(end) == '\r' && text.charAt(end + 1) == '\n') {
+                end++;
+            }
+            start = end + 1;
+        }
+        return chunk;
+    }
+
+    private static final class ParsedChunk {
+        private final List<CombatLogEvent> events = new ArrayList<>();
+        private boolean nonBlank;
+    }
+
+    /**
+     * Splits a stream into byte chunks that end right after a {@code \n}, except for the last one.
+     */
+    private static final class ChunkReader {
+        private final InputStream in;
+        private byte[] buffer;
+        private int length;
+        private boolean eof;
+
+        private ChunkReader(InputStream in, int chunkSize) {
+            this.in = in;
+            this.buffer = new byte[chunkSize];
+        }
+
+        private byte[] next() throws IOException {
+            while (true) {
+                while (!eof && length < buffer.length) {
+                    int read = in.read(buffer, length, buffer.length - length);
+                    if (read < 0) {
+                        eof = true;
+                    } else {
+                        length += read;
+                    }
+                }
+                if (length == 0) {
+                    return null;
+                }
+                int end = eof ? length : lastLineEnd();
+                if (end > 0) {
+                    byte[] chunk = Arrays.copyOf(buffer, end);
+                    System.arraycopy(buffer, end, buffer, 0, length - end);
+                    length -= end;
+                    return chunk;
+                }
+                // a single line fills the whole buffer
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+
+        private int lastLineEnd() {
+            for (int i = length - 1; i >= 0; i--) {
+                if (buffer[i] == '\n') {
+                    return i + 1;
+                }
+            }
+            return 0;
+        }
+    }
+}
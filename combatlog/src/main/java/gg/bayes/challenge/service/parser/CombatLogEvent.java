@@ -0,0 +1,37 @@
+package gg.bayes.challenge.service.parser;
+
+import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Mutable holder for the fields of a single parsed combat log line. A caller keeps one instance and hands it to
+ * {@link CombatLogLineParser#parse(String, CombatLogEvent)} for every line, so no intermediate objects are created for
+ * lines that are ignored.
+ */
+@Getter
+@Setter
+public class CombatLogEvent {
+    private CombatLogEntryEntity.Type type;
+    private long timestamp;
+    private String actor;
+    private String target;
+    private String ability;
+    /**
+     * Ability level, or {@code 0} when the event has none.
+     */
+    private int abilityLevel;
+    private String item;
+    private int damage;
+
+    void reset() {
+        type = null;
+        timestamp = 0;
+        actor = null;
+        target = null;
+        ability = null;
+        abilityLevel = 0;
+        item = null;
+        damage = 0;
+    }
+}
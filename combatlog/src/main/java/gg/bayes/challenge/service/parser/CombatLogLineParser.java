@@ -0,0 +1,250 @@
+package gg.bayes.challenge.service.parser;
+
+import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single pass tokenizer for combat log lines. A line is classified by the verb following the actor and its fields are
+ * cut out by position, without regular expressions. The supported layouts are:
+ *
+ * <pre>
+ * [00:08:46.693] npc_dota_hero_snapfire buys item item_clarity
+ * [00:11:17.489] npc_dota_hero_snapfire is killed by npc_dota_hero_mars
+ * [00:10:55.928] npc_dota_hero_bane casts ability bane_brain_sap (lvl 1) on npc_dota_hero_puck
+ * [00:10:42.031] npc_dota_hero_bane hits npc_dota_hero_abyssal_underlord with dota_unknown for 51 damage (740->689)
+ * </pre>
+ *
+ * Non-empty lines that do not start with a well formed timestamp are rejected and counted, see
+ * {@link #getRejectedLineCount()}. Lines whose first unit is not a hero are rejected right after the timestamp.
+ * Every parsed line and every matched event is counted as well; {@link CombatLogParserMetrics} publishes the counts.
+ * <p>
+ * Hero, ability and item names are interned in the {@link NameDictionary}, so the events only reference the
+ * dictionary's instance of each name.
+ */
+@Component
+public class CombatLogLineParser {
+    static final String HERO_PREFIX = "npc_dota_hero_";
+    static final String ITEM_PREFIX = "item_";
+
+    private static final String BUYS_ITEM = " buys item ";
+    private static final String IS_KILLED_BY = " is killed by ";
+    private static final String CASTS_ABILITY = " casts ability ";
+    private static final String HITS = " hits ";
+    private static final String LEVEL = " (lvl ";
+    private static final String ON = ") on ";
+    private static final String WITH = " with ";
+    private static final String FOR = " for ";
+
+    private final NameDictionary names;
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder rejectedLines = new LongAdder();
+    private final LongAdder[] events = new LongAdder[CombatLogEntryEntity.Type.values().length];
+
+    @Autowired
+    public CombatLogLineParser(NameDictionary names) {
+        this.names = names;
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Parses the given line into {@code event}.
+     *
+     * @param line  a single combat log line, without line terminator
+     * @param event the holder to fill, its previous content is discarded
+     * @return {@code true} if the line is one of the supported hero events, {@code false} if it should be ignored
+     */
+    public boolean parse(String line, CombatLogEvent event) {
+        event.reset();
+        lines.increment();
+        if (line.isEmpty()) {
+            return false;
+        }
+        long timestamp = TimestampDecoder.decode(line);
+        if (timestamp == TimestampDecoder.MALFORMED) {
+            rejectedLines.increment();
+            return false;
+        }
+        if (!line.startsWith(HERO_PREFIX, TimestampDecoder.LENGTH + 1)) {
+            return false;
+        }
+        int actorStart = TimestampDecoder.LENGTH + 1 + HERO_PREFIX.length();
+        int actorEnd = line.indexOf(' ', actorStart);
+        if (actorEnd <= actorStart) {
+            return false;
+        }
+
+        boolean matched;
+        if (line.startsWith(HITS, actorEnd)) {
+            matched = parseDamage(line, actorEnd + HITS.length(), event);
+        } else if (line.startsWith(CASTS_ABILITY, actorEnd)) {
+            matched = parseSpellCast(line, actorEnd + CASTS_ABILITY.length(), event);
+        } else if (line.startsWith(BUYS_ITEM, actorEnd)) {
+            matched = parseItemPurchase(line, actorEnd + BUYS_ITEM.length(), event);
+        } else if (line.startsWith(IS_KILLED_BY, actorEnd)) {
+            matched = parseKill(line, actorEnd + IS_KILLED_BY.length(), event);
+        } else {
+            return false;
+        }
+        if (!matched) {
+            event.reset();
+            return false;
+        }
+
+        // For kills the first unit on the line is the victim, which parseKill already stored as the target.
+        String firstUnit = name(line, actorStart, actorEnd);
+        if (event.getType() == CombatLogEntryEntity.Type.HERO_KILLED) {
+            event.setTarget(firstUnit);
+        } else {
+            event.setActor(firstUnit);
+        }
+        event.setTimestamp(timestamp);
+        events[event.getType().ordinal()].increment();
+        return true;
+    }
+
+    /**
+     * @return the number of lines parsed so far, whether they matched or not
+     */
+    public long getLineCount() {
+        return lines.sum();
+    }
+
+    /**
+     * @return the number of lines rejected so far because their timestamp was malformed
+     */
+    public long getRejectedLineCount() {
+        return rejectedLines.sum();
+    }
+
+    /**
+     * @return the number of lines parsed so far into an event of the given type
+     */
+    public long getEventCount(CombatLogEntryEntity.Type type) {
+        return events[type.ordinal()].sum();
+    }
+
+    /**
+     * @return the number of lines ignored so far because they are not a supported hero event, excluding the rejected
+     * ones
+     */
+    public long getSkippedLineCount() {
+        long matched = 0;
+        for (LongAdder count : events) {
+            matched += count.sum();
+        }
+        return Math.max(0, getLineCount() - getRejectedLineCount() - matched);
+    }
+
+    // <target> with <ability> for <damage> damage ...
+    private boolean parseDamage(String line, int from, CombatLogEvent event) {
+        if (!line.startsWith(HERO_PREFIX, from)) {
+            return false;
+        }
+        int targetStart = from + HERO_PREFIX.length();
+        int targetEnd = line.indexOf(' ', targetStart);
+        if (targetEnd <= targetStart || !line.startsWith(WITH, targetEnd)) {
+            return false;
+        }
+        int abilityStart = targetEnd + WITH.length();
+        int abilityEnd = line.indexOf(' ', abilityStart);
+        if (abilityEnd <= abilityStart || !line.startsWith(FOR, abilityEnd)) {
+            return false;
+        }
+        int damageStart = abilityEnd + FOR.length();
+        int damageEnd = skipDigits(line, damageStart);
+        if (!isNumber(damageStart, damageEnd)) {
+            return false;
+        }
+        event.setType(CombatLogEntryEntity.Type.DAMAGE_DONE);
+        event.setTarget(name(line, targetStart, targetEnd));
+        event.setAbility(name(line, abilityStart, abilityEnd));
+        event.setDamage(parseDigits(line, damageStart, damageEnd));
+        return true;
+    }
+
+    // <ability> (lvl <level>) on <target>
+    private boolean parseSpellCast(String line, int from, CombatLogEvent event) {
+        int abilityEnd = line.indexOf(' ', from);
+        if (abilityEnd <= from || !line.startsWith(LEVEL, abilityEnd)) {
+            return false;
+        }
+        int levelStart = abilityEnd + LEVEL.length();
+        int levelEnd = skipDigits(line, levelStart);
+        if (!isNumber(levelStart, levelEnd) || !line.startsWith(ON, levelEnd)) {
+            return false;
+        }
+        event.setType(CombatLogEntryEntity.Type.SPELL_CAST);
+        event.setAbility(name(line, from, abilityEnd));
+        event.setAbilityLevel(parseDigits(line, levelStart, levelEnd));
+        int targetStart = levelEnd + ON.length();
+        if (line.startsWith(HERO_PREFIX, targetStart)) {
+            event.setTarget(name(line, targetStart + HERO_PREFIX.length(), tokenEnd(line, targetStart)));
+        }
+        return true;
+    }
+
+    // item_<item>
+    private boolean parseItemPurchase(String line, int from, CombatLogEvent event) {
+        if (!line.startsWith(ITEM_PREFIX, from)) {
+            return false;
+        }
+        int itemStart = from + ITEM_PREFIX.length();
+        int itemEnd = tokenEnd(line, itemStart);
+        if (itemEnd == itemStart) {
+            return false;
+        }
+        event.setType(CombatLogEntryEntity.Type.ITEM_PURCHASED);
+        event.setItem(name(line, itemStart, itemEnd));
+        return true;
+    }
+
+    // <killer>
+    private boolean parseKill(String line, int from, CombatLogEvent event) {
+        if (!line.startsWith(HERO_PREFIX, from)) {
+            return false;
+        }
+        int killerStart = from + HERO_PREFIX.length();
+        int killerEnd = tokenEnd(line, killerStart);
+        if (killerEnd == killerStart) {
+            return false;
+        }
+        event.setType(CombatLogEntryEntity.Type.HERO_KILLED);
+        event.setActor(name(line, killerStart, killerEnd));
+        return true;
+    }
+
+    private String name(String line, int from, int to) {
+        return names.intern(line.substring(from, to));
+    }
+
+    private static int tokenEnd(String line, int from) {
+        int end = line.indexOf(' ', from);
+        return end < 0 ? line.length() : end;
+    }
+
+    private static int skipDigits(String line, int from) {
+        int i = from;
+        while (i < line.length() && line.charAt(i) >= '0' && line.charAt(i) <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    // Up to nine digits always fit into an int.
+    private static boolean isNumber(int from, int to) {
+        return to > from && to - from <= 9;
+    }
+
+    private static int parseDigits(String line, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (line.charAt(i) - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,53 @@
+package gg.bayes.challenge.service.parser;
+
+import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Publishes the line counts of the {@link CombatLogLineParser}:
+ * <ul>
+ *     <li>{@code dota.ingest.lines.read}: all lines parsed</li>
+ *     <li>{@code dota.ingest.lines.matched}: lines parsed into an event, tagged with the event {@code type}</li>
+ *     <li>{@code dota.ingest.lines.skipped}: lines that are not a supported hero event</li>
+ *     <li>{@code dota.ingest.lines.rejected}: lines with a malformed timestamp</li>
+ * </ul>
+ * The parser keeps counting in its own adders, the meters only read them when they are published.
+ */
+@Component
+public class CombatLogParserMetrics implements MeterBinder {
+    private final CombatLogLineParser parser;
+
+    @Autowired
+    public CombatLogParserMetrics(CombatLogLineParser parser) {
+        this.parser = parser;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("dota.ingest.lines.read", parser, CombatLogLineParser::getLineCount)
+                .description("Combat log lines parsed")
+                .baseUnit("lines")
+                .register(registry);
+        for (CombatLogEntryEntity.Type type : CombatLogEntryEntity.Type.values()) {
+            FunctionCounter.builder("dota.ingest.lines.matched", parser, p -> p.getEventCount(type))
+                    .description("Combat log lines parsed into an event")
+                    .baseUnit("lines")
+                    .tag("type", type.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+        FunctionCounter.builder("dota.ingest.lines.skipped", parser, CombatLogLineParser::getSkippedLineCount)
+                .description("Combat log lines that are not a supported hero event")
+                .baseUnit("lines")
+                .register(registry);
+        FunctionCounter.builder("dota.ingest.lines.rejected", parser, CombatLogLineParser::getRejectedLineCount)
+                .description("Combat log lines with a malformed timestamp")
+                .baseUnit("lines")
+                .register(registry);
+    }
+}
@@ -0,0 +1,75 @@
+package gg.bayes.challenge.service.parser;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe mapping between names (heroes, abilities, items) and dense int ids, shared by all matches. The parser
+ * hands out the dictionary's canonical instance of every name, so each distinct name is held in memory only once, and
+ * the stores use the ids in place of the names. Ids are assigned from {@code 0} in registration order and are never
+ * reused or removed.
+ */
+@Component
+public class NameDictionary {
+    public static final int NONE = -1;
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[256];
+    private volatile int size;
+
+    /**
+     * @return the id of the name, registering it if it is new, or {@link #NONE} for {@code null}
+     */
+    public int idOf(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = ids.get(name);
+        return id != null ? id : register(name);
+    }
+
+    /**
+     * @return the id of the name, or {@link #NONE} if it was never registered
+     */
+    public int find(String name) {
+        Integer id = name == null ? null : ids.get(name);
+        return id != null ? id : NONE;
+    }
+
+    /**
+     * @return the canonical instance of the name, registering it if it is new
+     */
+    public String intern(String name) {
+        return name(idOf(name));
+    }
+
+    public String name(int id) {
+        return id == NONE ? null : names[id];
+    }
+
+    /**
+     * @return the number of registered names, all ids below it are assigned
+     */
+    public int size() {
+        return size;
+    }
+
+    private synchronized int register(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        int id = size;
+        String[] current = names;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id * 2);
+        }
+        current[id] = name;
+        names = current;
+        ids.put(name, id);
+        size = id + 1;
+        return id;
+    }
+}
@@ -0,0 +1,54 @@
+package gg.bayes.challenge.service.parser;
+
+/**
+ * Decodes the fixed layout {@code [HH:mm:ss.SSS]} timestamp at the start of a combat log line into milliseconds since
+ * the start of the match. Decoding works directly on the characters of the line and does not allocate.
+ */
+public final class TimestampDecoder {
+    /**
+     * Length of {@code [HH:mm:ss.SSS]}, including both brackets.
+     */
+    public static final int LENGTH = 14;
+    /**
+     * Returned by {@link #decode(CharSequence)} when the line does not start with a well formed timestamp.
+     */
+    public static final long MALFORMED = -1;
+
+    private TimestampDecoder() {
+    }
+
+    /**
+     * @param line a combat log line
+     * @return the milliseconds since match start, or {@link #MALFORMED}
+     */
+    public static long decode(CharSequence line) {
+        if (line.length() < LENGTH
+                || line.charAt(0) != '['
+                || line.charAt(3) != ':'
+                || line.charAt(6) != ':'
+                || line.charAt(9) != '.'
+                || line.charAt(13) != ']') {
+            return MALFORMED;
+        }
+        int hours = digits(line, 1, 3);
+        int minutes = digits(line, 4, 6);
+        int seconds = digits(line, 7, 9);
+        int millis = digits(line, 10, 13);
+        if (hours < 0 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59 || millis < 0) {
+            return MALFORMED;
+        }
+        return ((hours * 60L + minutes) * 60L + seconds) * 1000L + millis;
+    }
+
+    private static int digits(CharSequence line, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,523 @@
+package gg.bayes.challenge.service.store;
+
+import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
+import gg.bayes.challenge.rest.model.HeroDamage;
+import gg.bayes.challenge.rest.model.HeroItem;
+import gg.bayes.challenge.rest.model.HeroKills;
+import gg.bayes.challenge.rest.model.HeroSpells;
+import gg.bayes.challenge.rest.model.HeroSummary;
+import gg.bayes.challenge.rest.model.TimelineEvent;
+import gg.bayes.challenge.service.parser.CombatLogEvent;
+import gg.bayes.challenge.service.parser.NameDictionary;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The events of one match stored column by column: event {@code i} is made of its type, ability level, timestamp,
+ * actor and so on, each read from a column of its own. Names are stored as {@link NameDictionary} ids and absent
+ * values as {@link NameDictionary#NONE}. Queries are linear scans over the columns they need. Ability levels, damage
+ * and names take an int each, like the JPA store; timestamps are milliseconds in an int, which holds 24 days.
+ * <p>
+ * The columns are buffers: heap buffers while a match is built, or views of a memory mapped snapshot file once it is
+ * stored, see {@link #writeSnapshot(ByteBuffer)} and {@link #fromSnapshot(NameDictionary, ByteBuffer)}. Events
+ * appended to a built match go to a growable heap tail following those columns, see {@link #append(ColumnarMatch)}.
+ * <p>
+ * Events are kept ordered by timestamp (logs are already, so this is only a check), and a query limited to a
+ * {@link TimeRange} binary searches the bounds of the window and only scans the events in it.
+ */
+class ColumnarMatch {
+    private static final CombatLogEntryEntity.Type[] TYPES = CombatLogEntryEntity.Type.values();
+    private static final byte KILL = (byte) CombatLogEntryEntity.Type.HERO_KILLED.ordinal();
+    private static final byte ITEM = (byte) CombatLogEntryEntity.Type.ITEM_PURCHASED.ordinal();
+    private static final byte SPELL = (byte) CombatLogEntryEntity.Type.SPELL_CAST.ordinal();
+    private static final byte DAMAGE = (byte) CombatLogEntryEntity.Type.DAMAGE_DONE.ordinal();
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int SNAPSHOT_MAGIC = 0x4d544f44; // "DOTM"
+    private static final int SNAPSHOT_VERSION = 2;
+    // version 1 kept ability levels in a byte column
+    private static final int SNAPSHOT_VERSION_BYTE_LEVELS = 1;
+    private static final int SNAPSHOT_HEADER = 4 * Integer.BYTES;
+
+    private final NameDictionary names;
+    // events [0, headSize) are in head, the following ones in tail
+    private Columns head;
+    private int headSize;
+    private final Columns tail;
+    private int size;
+
+    ColumnarMatch(NameDictionary names) {
+        this(names, new Columns(INITIAL_CAPACITY), 0, null, 0);
+    }
+
+    private ColumnarMatch(NameDictionary names, Columns head, int headSize, Columns tail, int size) {
+        this.names = names;
+        this.head = head;
+        this.headSize = headSize;
+        this.tail = tail;
+        this.size = size;
+    }
+
+    /**
+     * Wraps a snapshot written by {@link #writeSnapshot(ByteBuffer)}, typically a memory mapped file. The columns are
+     * views of {@code snapshot}, nothing is copied, so the match only costs heap for the buffer objects and the
+     * queries read the mapped pages directly.
+     *
+     * @throws IllegalArgumentException if {@code snapshot} is not a match snapshot or is truncated
+     */
+    static ColumnarMatch fromSnapshot(NameDictionary names, ByteBuffer snapshot) {
+        ByteBuffer buffer = snapshot.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int size = snapshotEvents(buffer);
+        int version = buffer.getInt(Integer.BYTES);
+        int position = SNAPSHOT_HEADER;
+        ByteBuffer types = slice(buffer, position, size);
+        position += size;
+        List<IntBuffer> columns = new ArrayList<>(7);
+        if (version == SNAPSHOT_VERSION_BYTE_LEVELS) {
+            // widened on the heap; the bytes are read unsigned, so levels up to 255 come back exact
+            ByteBuffer levels = slice(buffer, position, size);
+            IntBuffer abilityLevels = IntBuffer.allocate(size);
+            for (int i = 0; i < size; i++) {
+                abilityLevels.put(i, Byte.toUnsignedInt(levels.get(i)));
+            }
+            columns.add(abilityLevels);
+            position += size;
+        }
+        position = align(position);
+        while (columns.size() < 7) {
+            columns.add(slice(buffer, position, size * Integer.BYTES).asIntBuffer());
+            position += size * Integer.BYTES;
+        }
+        return new ColumnarMatch(names, new Columns(types, columns), size, null, size);
+    }
+
+    /**
+     * @return the number of bytes of the snapshot {@code snapshot} starts with, so a snapshot written right after it
+     * can be found
+     * @throws IllegalArgumentException if {@code snapshot} is not a match snapshot or is truncated
+     */
+    static int snapshotSize(ByteBuffer snapshot) {
+        ByteBuffer buffer = snapshot.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int size = snapshotEvents(buffer);
+        return snapshotSize(buffer.getInt(Integer.BYTES), size);
+    }
+
+    private static int snapshotEvents(ByteBuffer buffer) {
+        if (buffer.remaining() < SNAPSHOT_HEADER || buffer.getInt(0) != SNAPSHOT_MAGIC) {
+            throw new IllegalArgumentException("Not a match snapshot");
+        }
+        int version = buffer.getInt(Integer.BYTES);
+        if (version != SNAPSHOT_VERSION && version != SNAPSHOT_VERSION_BYTE_LEVELS) {
+            throw new IllegalArgumentException("Unsupported match snapshot version " + version);
+        }
+        int size = buffer.getInt(2 * Integer.BYTES);
+        if (size < 0 || buffer.remaining() < snapshotSize(version, size)) {
+            throw new IllegalArgumentException("Truncated match snapshot of " + size + " events");
+        }
+        return size;
+    }
+
+    /**
+     * Adds an event while the match is built, before it is appended to.
+     *
+     * @throws IllegalArgumentException if the timestamp of the event does not fit in an int
+     */
+    void add(CombatLogEvent event) {
+        long timestamp = event.getTimestamp();
+        if (timestamp < 0 || timestamp > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Event timestamp " + timestamp + " ms is out of range");
+        }
+        if (size == head.capacity()) {
+            head = head.resize(size, size * 2);
+        }
+        head.types.put(size, (byte) event.getType().ordinal());
+        head.abilityLevels.put(size, event.getAbilityLevel());
+        head.timestamps.put(size, (int) timestamp);
+        head.actors.put(size, names.idOf(event.getActor()));
+        head.targets.put(size, names.idOf(event.getTarget()));
+        head.abilities.put(size, names.idOf(event.getAbility()));
+        head.items.put(size, names.idOf(event.getItem()));
+        head.damage.put(size, event.getDamage());
+        headSize = ++size;
+    }
+
+    /**
+     * @return whether the events of {@code segment} come at or after the last event of this match, so appending it
+     * keeps the events ordered without moving any
+     */
+    boolean isFollowedBy(ColumnarMatch segment) {
+        return size == 0 || segment.size == 0 || segment.timestamp(0) >= timestamp(size - 1);
+    }
+
+    /**
+     * Returns a match holding the events of this match followed by those of {@code segment}, ordered by timestamp,
+     * leaving both unchanged for their readers.
+     * <p>
+     * If {@link #isFollowedBy(ColumnarMatch) segment follows this match}, its events are copied into the spare capacity
+     * of the tail, which the result shares with this match, and the tail doubles when it is full, so an append costs
+     * the size of the segment, amortized. Readers of this match never look past its size, so they are not affected.
+     * As the result owns the spare capacity from then on, a match must only be appended to through its latest version
+     * and by one thread at a time. Otherwise the result is a sorted copy of all the events.
+     */
+    ColumnarMatch append(ColumnarMatch segment) {
+        if (segment.size == 0) {
+            return this;
+        }
+        int length = size + segment.size;
+        if (!isFollowedBy(segment)) {
+            Columns columns = new Columns(length);
+            copyTo(columns, 0);
+            segment.copyTo(columns, size);
+            ColumnarMatch result = new ColumnarMatch(names, columns, length, null, length);
+            result.sortByTimestamp();
+            return result;
+        }
+        int tailSize = size - headSize;
+        Columns grown = tail;
+        if (grown == null || tailSize + segment.size > grown.capacity()) {
+            grown = tail == null
+                    ? new Columns(Math.max(INITIAL_CAPACITY, 2 * segment.size))
+                    : tail.resize(tailSize, Math.max(2 * tail.capacity(), 2 * (tailSize + segment.size)));
+        }
+        segment.copyTo(grown, tailSize);
+        return new ColumnarMatch(names, head, headSize, grown, length);
+    }
+
+    /**
+     * Releases the spare capacity once all events are added, and orders them by timestamp.
+     */
+    void trim() {
+        head = head.resize(size, size);
+        sortByTimestamp();
+    }
+
+    int size() {
+        return size;
+    }
+
+    long sizeInBytes() {
+        int capacity = head.capacity() + (tail != null ? tail.capacity() : 0);
+        return (long) capacity * (Byte.BYTES + 7 * Integer.BYTES);
+    }
+
+    /**
+     * @return the number of bytes {@link #writeSnapshot(ByteBuffer)} writes
+     */
+    int snapshotSize() {
+        return snapshotSize(SNAPSHOT_VERSION, size);
+    }
+
+    /**
+     * Writes the events at the position of {@code target}, which needs {@link #snapshotSize()} bytes remaining. The
+     * layout is a header of four little endian ints (magic, version, number of events, reserved), the byte column of
+     * the types, padding to a multiple of four, then the seven int columns, all little endian.
+     */
+    void writeSnapshot(ByteBuffer target) {
+        ByteBuffer buffer = target.slice().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(size).putInt(0);
+        buffer.put(slice(head.types, 0, headSize));
+        if (tail != null) {
+            buffer.put(slice(tail.types, 0, size - headSize));
+        }
+        buffer.position(align(buffer.position()));
+        List<IntBuffer> headColumns = head.intColumns();
+        List<IntBuffer> tailColumns = tail != null ? tail.intColumns() : List.of();
+        for (int column = 0; column < headColumns.size(); column++) {
+            IntBuffer ints = buffer.asIntBuffer().put(slice(headColumns.get(column), 0, headSize));
+            if (tail != null) {
+                ints.put(slice(tailColumns.get(column), 0, size - headSize));
+            }
+            buffer.position(buffer.position() + size * Integer.BYTES);
+        }
+        target.position(target.position() + buffer.position());
+    }
+
+    CombatLogEntryEntity.Type type(int i) {
+        return TYPES[typeId(i)];
+    }
+
+    List<HeroKills> heroKills(TimeRange range) {
+        int[] kills = new int[names.size()];
+        boolean[] present = new boolean[kills.length];
+        int to = lowerBound(range.toOrMax());
+        for (int i = lowerBound(range.fromOrMin()); i < to; i++) {
+            present[actor(i)] = true;
+            if (target(i) != NameDictionary.NONE) {
+                present[target(i)] = true;
+            }
+            if (typeId(i) == KILL) {
+                kills[actor(i)]++;
+            }
+        }
+        List<HeroKills> result = new ArrayList<>();
+        for (int hero = 0; hero < present.length; hero++) {
+            if (present[hero]) {
+                result.add(new HeroKills(names.name(hero), kills[hero]));
+            }
+        }
+        result.sort(Comparator.comparing(HeroKills::getKills).reversed().thenComparing(HeroKills::getHero));
+        return result;
+    }
+
+    List<HeroItem> heroItems(String heroName, TimeRange range) {
+        int hero = names.find(heroName);
+        List<HeroItem> result = new ArrayList<>();
+        if (hero == NameDictionary.NONE) {
+            return result;
+        }
+        int to = lowerBound(range.toOrMax());
+        for (int i = lowerBound(range.fromOrMin()); i < to; i++) {
+            if (typeId(i) == ITEM && actor(i) == hero) {
+                result.add(new HeroItem(names.name(item(i)), (long) timestamp(i)));
+            }
+        }
+        result.sort(Comparator.comparing(HeroItem::getTimestamp));
+        return result;
+    }
+
+    List<HeroSpells> heroSpells(String heroName, TimeRange range) {
+        int hero = names.find(heroName);
+        List<HeroSpells> result = new ArrayList<>();
+        if (hero == NameDictionary.NONE) {
+            return result;
+        }
+        int[] casts = new int[names.size()];
+        int to = lowerBound(range.toOrMax());
+        for (int i = lowerBound(range.fromOrMin()); i < to; i++) {
+            if (typeId(i) == SPELL && actor(i) == hero) {
+                casts[ability(i)]++;
+            }
+        }
+        for (int spell = 0; spell < casts.length; spell++) {
+            if (casts[spell] > 0) {
+                result.add(new HeroSpells(names.name(spell), casts[spell]));
+            }
+        }
+        result.sort(Comparator.comparing(HeroSpells::getCasts).reversed().thenComparing(HeroSpells::getSpell));
+        return result;
+    }
+
+    /**
+     * Damage dealt by the given hero, grouped by the damaged hero, see
+     * {@link gg.bayes.challenge.persistence.repository.HeroDamageRepository#findDamageDealt(Long, String)}.
+     */
+    List<HeroDamage> damageDealt(String heroName, TimeRange range) {
+        int hero = names.find(heroName);
+        List<HeroDamage> result = new ArrayList<>();
+        if (hero == NameDictionary.NONE) {
+            return result;
+        }
+        int[] instances = new int[names.size()];
+        int[] total = new int[instances.length];
+        int to = lowerBound(range.toOrMax());
+        for (int i = lowerBound(range.fromOrMin()); i < to; i++) {
+            if (typeId(i) == DAMAGE && actor(i) == hero) {
+                instances[target(i)]++;
+                total[target(i)] += damage(i);
+            }
+        }
+        for (int target = 0; target < instances.length; target++) {
+            if (instances[target] > 0) {
+                result.add(new HeroDamage(names.name(target), instances[target], total[target]));
+            }
+        }
+        result.sort(Comparator.comparing(HeroDamage::getTotalDamage).reversed().thenComparing(HeroDamage::getTarget));
+        return result;
+    }
+
+    List<TimelineEvent> timeline(TimeRange range) {
+        int from = lowerBound(range.fromOrMin());
+        int to = lowerBound(range.toOrMax());
+        List<TimelineEvent> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            int abilityLevel = abilityLevel(i);
+            result.add(new TimelineEvent((long) timestamp(i), type(i), nameOrNull(actor(i)),
+                    nameOrNull(target(i)), nameOrNull(ability(i)), abilityLevel > 0 ? abilityLevel : null,
+                    nameOrNull(item(i)), typeId(i) == DAMAGE ? damage(i) : null));
+        }
+        return result;
+    }
+
+    List<HeroSummary> summary(TimeRange range) {
+        MatchSummaryBuilder summary = new MatchSummaryBuilder();
+        int to = lowerBound(range.toOrMax());
+        for (int i = lowerBound(range.fromOrMin()); i < to; i++) {
+            summary.add(type(i), names.name(actor(i)), nameOrNull(target(i)), nameOrNull(ability(i)),
+                    nameOrNull(item(i)), typeId(i) == DAMAGE ? damage(i) : 0, timestamp(i));
+        }
+        return summary.build();
+    }
+
+    /**
+     * @return the index of the first event at or after {@code timestamp}, {@link #size()} if there is none
+     */
+    int lowerBound(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamp(middle) < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private String nameOrNull(int id) {
+        return id == NameDictionary.NONE ? null : names.name(id);
+    }
+
+    private byte typeId(int i) {
+        return i < headSize ? head.types.get(i) : tail.types.get(i - headSize);
+    }
+
+    private int abilityLevel(int i) {
+        return i < headSize ? head.abilityLevels.get(i) : tail.abilityLevels.get(i - headSize);
+    }
+
+    private int timestamp(int i) {
+        return i < headSize ? head.timestamps.get(i) : tail.timestamps.get(i - headSize);
+    }
+
+    private int actor(int i) {
+        return i < headSize ? head.actors.get(i) : tail.actors.get(i - headSize);
+    }
+
+    private int target(int i) {
+        return i < headSize ? head.targets.get(i) : tail.targets.get(i - headSize);
+    }
+
+    private int ability(int i) {
+        return i < headSize ? head.abilities.get(i) : tail.abilities.get(i - headSize);
+    }
+
+    private int item(int i) {
+        return i < headSize ? head.items.get(i) : tail.items.get(i - headSize);
+    }
+
+    private int damage(int i) {
+        return i < headSize ? head.damage.get(i) : tail.damage.get(i - headSize);
+    }
+
+    // stable, so events with the same timestamp stay in log order; only used before the match has a tail
+    private void sortByTimestamp() {
+        boolean sorted = true;
+        for (int i = 1; i < size && sorted; i++) {
+            sorted = head.timestamps.get(i - 1) <= head.timestamps.get(i);
+        }
+        if (sorted) {
+            return;
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        IntBuffer keys = head.timestamps;
+        Arrays.sort(order, Comparator.comparingInt(keys::get));
+        head = head.permute(order);
+    }
+
+    // copies all the events to columns, starting at offset
+    private void copyTo(Columns columns, int offset) {
+        head.copyTo(headSize, columns, offset);
+        if (tail != null) {
+            tail.copyTo(size - headSize, columns, offset + headSize);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int from, int length) {
+        return buffer.duplicate().position(from).limit(from + length).slice().order(buffer.order());
+    }
+
+    private static IntBuffer slice(IntBuffer buffer, int from, int length) {
+        return buffer.duplicate().position(from).limit(from + length).slice();
+    }
+
+    private static int snapshotSize(int version, int size) {
+        return version == SNAPSHOT_VERSION_BYTE_LEVELS
+                ? align(SNAPSHOT_HEADER + 2 * size) + 6 * size * Integer.BYTES
+                : align(SNAPSHOT_HEADER + size) + 7 * size * Integer.BYTES;
+    }
+
+    private static int align(int position) {
+        return (position + Integer.BYTES - 1) & -Integer.BYTES;
+    }
+
+    /**
+     * One buffer per column, all of the same capacity. The int columns are listed in snapshot order.
+     */
+    private static final class Columns {
+        private final ByteBuffer types;
+        private final IntBuffer abilityLevels;
+        private final IntBuffer timestamps;
+        private final IntBuffer actors;
+        private final IntBuffer targets;
+        private final IntBuffer abilities;
+        private final IntBuffer items;
+        private final IntBuffer damage;
+
+        Columns(int capacity) {
+            this(ByteBuffer.allocate(capacity), List.of(IntBuffer.allocate(capacity), IntBuffer.allocate(capacity),
+                    IntBuffer.allocate(capacity), IntBuffer.allocate(capacity), IntBuffer.allocate(capacity),
+                    IntBuffer.allocate(capacity), IntBuffer.allocate(capacity)));
+        }
+
+        Columns(ByteBuffer types, List<IntBuffer> intColumns) {
+            this.types = types;
+            abilityLevels = intColumns.get(0);
+            timestamps = intColumns.get(1);
+            actors = intColumns.get(2);
+            targets = intColumns.get(3);
+            abilities = intColumns.get(4);
+            items = intColumns.get(5);
+            damage = intColumns.get(6);
+        }
+
+        int capacity() {
+            return types.capacity();
+        }
+
+        List<IntBuffer> intColumns() {
+            return List.of(abilityLevels, timestamps, actors, targets, abilities, items, damage);
+        }
+
+        // a heap copy of the first length events
+        Columns resize(int length, int capacity) {
+            Columns resized = new Columns(capacity);
+            copyTo(length, resized, 0);
+            return resized;
+        }
+
+        void copyTo(int length, Columns to, int offset) {
+            to.types.duplicate().position(offset).put(slice(types, 0, length));
+            List<IntBuffer> from = intColumns();
+            List<IntBuffer> target = to.intColumns();
+            for (int column = 0; column < from.size(); column++) {
+                target.get(column).duplicate().position(offset).put(slice(from.get(column), 0, length));
+            }
+        }
+
+        Columns permute(Integer[] order) {
+            Columns permuted = new Columns(capacity());
+            for (int i = 0; i < order.length; i++) {
+                permuted.types.put(i, types.get(order[i]));
+            }
+            List<IntBuffer> from = intColumns();
+            List<IntBuffer> target = permuted.intColumns();
+            for (int column = 0; column < from.size(); column++) {
+                for (int i = 0; i < order.length; i++) {
+                    target.get(column).put(i, from.get(column).get(order[i]));
+                }
+            }
+            return permuted;
+        }
+    }
+}
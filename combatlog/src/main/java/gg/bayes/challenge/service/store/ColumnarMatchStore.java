@@ -0,0 +1,273 @@
+package gg.bayes.challenge.service.store;
+
+import gg.bayes.challenge.config.SnapshotProperties;
+import gg.bayes.challenge.rest.model.HeroDamage;
+import gg.bayes.challenge.rest.model.HeroItem;
+import gg.bayes.challenge.rest.model.HeroKills;
+import gg.bayes.challenge.rest.model.HeroSpells;
+import gg.bayes.challenge.rest.model.HeroSummary;
+import gg.bayes.challenge.rest.model.TimelineEvent;
+import gg.bayes.challenge.service.parser.NameDictionary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps matches in memory as primitive columns, see {@link ColumnarMatch}. Hero, ability and item names are
+ * dictionary encoded with the shared {@link NameDictionary}. Matches are lost on restart, unless
+ * {@link SnapshotProperties#getDirectory()} is set: every stored match is then written to a binary snapshot, see
+ * {@link MatchSnapshots}, and served from the memory mapped file instead of the heap. At startup the snapshots are
+ * mapped again, so the matches are available without parsing or reading them. The content hashes of the matches are
+ * only kept in memory. Match ids are reserved in the snapshot directory {@value #RESERVED_IDS} at a time, like a
+ * pooled database sequence, so an id is never reused across restarts, even the id of a deleted match.
+ * <p>
+ * A match becomes visible to readers only once all of its events are stored, and the events a reader sees are never
+ * modified afterwards, so queries need no locking. Appending writes the new events past the end of the match and
+ * swaps in a version of the match that includes them, see {@link ColumnarMatch#append(ColumnarMatch)}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dota.store", havingValue = "columnar")
+public class ColumnarMatchStore implements MatchStore {
+    private static final int RESERVED_IDS = 1000;
+
+    private final NameDictionary names;
+    private final Map<Long, ColumnarMatch> matches = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    // the highest id stored in the snapshot directory, ids up to it can be handed out
+    private volatile long reservedIds;
+    private final MatchSnapshots snapshots;
+    // content hash -> match id, and back, for the matches not appended to since they were uploaded
+    private final Map<String, Long> contentHashes = new ConcurrentHashMap<>();
+    private final Map<Long, String> matchHashes = new ConcurrentHashMap<>();
+
+    public ColumnarMatchStore(NameDictionary names) {
+        this(names, new SnapshotProperties());
+    }
+
+    /**
+     * @throws UncheckedIOException if the snapshots can not be loaded
+     */
+    @Autowired
+    public ColumnarMatchStore(NameDictionary names, SnapshotProperties snapshotProperties) {
+        this.names = names;
+        this.snapshots = snapshotProperties.getDirectory() != null
+                ? new MatchSnapshots(snapshotProperties.getDirectory(), names)
+                : null;
+        if (snapshots != null) {
+            long start = System.nanoTime();
+            try {
+                matches.putAll(snapshots.load());
+                reservedIds = Math.max(snapshots.loadSequence(),
+                        matches.keySet().stream().mapToLong(Long::longValue).max().orElse(0));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can not load the match snapshots", e);
+            }
+            sequence.set(reservedIds);
+            log.info("Mapped {} match snapshots from {} in {} ms", matches.size(), snapshotProperties.getDirectory(),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    @Override
+    public long save(CombatLogEventSource events, String contentHash) throws IOException {
+        ColumnarMatch match = build(events);
+        long matchId = nextMatchId();
+        matches.put(matchId, snapshot(matchId, match));
+        rememberContentHash(matchId, contentHash);
+        log.debug("Stored match {} with {} events in {} bytes", matchId, match.size(), match.sizeInBytes());
+        return matchId;
+    }
+
+    /**
+     * Builds and snapshots every match before publishing any of them. If one fails, the snapshots already written are
+     * deleted and none of the matches becomes visible.
+     */
+    @Override
+    public List<Long> saveAll(List<CombatLogEventSource> sources, List<String> contentHashes) throws IOException {
+        List<ColumnarMatch> built = new ArrayList<>(sources.size());
+        for (CombatLogEventSource events : sources) {
+            built.add(build(events));
+        }
+        List<Long> matchIds = new ArrayList<>(built.size());
+        List<ColumnarMatch> stored = new ArrayList<>(built.size());
+        try {
+            for (ColumnarMatch match : built) {
+                long matchId = nextMatchId();
+                matchIds.add(matchId);
+                stored.add(snapshot(matchId, match));
+            }
+        } catch (IOException | RuntimeException e) {
+            if (snapshots != null) {
+                for (long matchId : matchIds) {
+                    try {
+                        snapshots.delete(matchId);
+                    } catch (IOException deleteFailure) {
+                        e.addSuppressed(deleteFailure);
+                    }
+                }
+            }
+            throw e;
+        }
+        for (int i = 0; i < matchIds.size(); i++) {
+            matches.put(matchIds.get(i), stored.get(i));
+            rememberContentHash(matchIds.get(i), contentHashes.get(i));
+        }
+        log.debug("Stored matches {}", matchIds);
+        return matchIds;
+    }
+
+    private long nextMatchId() throws IOException {
+        long matchId = sequence.incrementAndGet();
+        if (snapshots != null && matchId > reservedIds) {
+            reserveIds(matchId);
+        }
+        return matchId;
+    }
+
+    private synchronized void reserveIds(long matchId) throws IOException {
+        if (matchId > reservedIds) {
+            long reserved = matchId + RESERVED_IDS - 1;
+            snapshots.storeSequence(reserved);
+            reservedIds = reserved;
+        }
+    }
+
+    private ColumnarMatch build(CombatLogEventSource events) throws IOException {
+        ColumnarMatch match = new ColumnarMatch(names);
+        events.forEach(match::add);
+        match.trim();
+        return match;
+    }
+
+    /**
+     * Appends under the lock of the map entry, so the appends to a match are applied one at a time, each to its latest
+     * version. With snapshots, the segment is appended to the snapshot file; only a segment going back in time
+     * rewrites the whole snapshot.
+     */
+    @Override
+    public boolean append(long matchId, CombatLogEventSource events) throws IOException {
+        if (!matches.containsKey(matchId)) {
+            return false;
+        }
+        ColumnarMatch segment = build(events);
+        forgetContentHash(matchId);
+        boolean[] appended = new boolean[1];
+        try {
+            matches.computeIfPresent(matchId, (id, match) -> {
+                try {
+                    ColumnarMatch extended = append(id, match, segment);
+                    appended[0] = true;
+                    return extended;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return appended[0];
+    }
+
+    private ColumnarMatch append(long matchId, ColumnarMatch match, ColumnarMatch segment) throws IOException {
+        ColumnarMatch extended = match.append(segment);
+        if (snapshots == null || segment.size() == 0) {
+            return extended;
+        }
+        if (match.isFollowedBy(segment)) {
+            snapshots.append(matchId, segment);
+            return extended;
+        }
+        return snapshots.write(matchId, extended);
+    }
+
+    /**
+     * @throws UncheckedIOException if the snapshot of the match can not be deleted
+     */
+    @Override
+    public boolean delete(long matchId) {
+        if (matches.remove(matchId) == null) {
+            return false;
+        }
+        forgetContentHash(matchId);
+        if (snapshots != null) {
+            try {
+                snapshots.delete(matchId);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can not delete the snapshot of match " + matchId, e);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Optional<Long> findByContentHash(String contentHash) {
+        return Optional.ofNullable(contentHashes.get(contentHash));
+    }
+
+    @Override
+    public List<Long> getMatchIds() {
+        List<Long> matchIds = new ArrayList<>(matches.keySet());
+        Collections.sort(matchIds);
+        return matchIds;
+    }
+
+    private void rememberContentHash(long matchId, String contentHash) {
+        if (contentHash != null) {
+            matchHashes.put(matchId, contentHash);
+            contentHashes.putIfAbsent(contentHash, matchId);
+        }
+    }
+
+    private void forgetContentHash(long matchId) {
+        String contentHash = matchHashes.remove(matchId);
+        if (contentHash != null) {
+            contentHashes.remove(contentHash, matchId);
+        }
+    }
+
+    private ColumnarMatch snapshot(long matchId, ColumnarMatch match) throws IOException {
+        return snapshots != null ? snapshots.write(matchId, match) : match;
+    }
+
+    @Override
+    public Optional<List<HeroKills>> getHeroKills(long matchId, TimeRange range) {
+        return Optional.ofNullable(matches.get(matchId)).map(match -> match.heroKills(range));
+    }
+
+    @Override
+    public Optional<List<HeroItem>> getHeroItems(long matchId, String heroName, TimeRange range) {
+        return Optional.ofNullable(matches.get(matchId)).map(match -> match.heroItems(heroName, range));
+    }
+
+    @Override
+    public Optional<List<HeroSpells>> getHeroSpells(long matchId, String heroName, TimeRange range) {
+        return Optional.ofNullable(matches.get(matchId)).map(match -> match.heroSpells(heroName, range));
+    }
+
+    @Override
+    public Optional<List<HeroDamage>> getHeroDamages(long matchId, String heroName, TimeRange range) {
+        return Optional.ofNullable(matches.get(matchId)).map(match -> match.damageDealt(heroName, range));
+    }
+
+    @Override
+    public Optional<List<TimelineEvent>> getTimeline(long matchId, TimeRange range) {
+        return Optional.ofNullable(matches.get(matchId)).map(match -> match.timeline(range));
+    }
+
+    @Override
+    public Optional<List<HeroSummary>> getSummary(long matchId, TimeRange range) {
+        return Optional.ofNullable(matches.get(matchId)).map(match -> match.summary(range));
+    }
+}
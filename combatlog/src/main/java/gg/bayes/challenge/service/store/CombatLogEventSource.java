@@ -0,0 +1,16 @@
+package gg.bayes.challenge.service.store;
+
+import gg.bayes.challenge.service.parser.CombatLogEvent;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * The parsed events of one combat log, in log order. The same {@link CombatLogEvent} instance may be handed to the
+ * consumer for every event, so a consumer must copy what it keeps.
+ */
+@FunctionalInterface
+public interface CombatLogEventSource {
+
+    void forEach(Consumer<CombatLogEvent> consumer) throws IOException;
+}
@@ -0,0 +1,388 @@
+package gg.bayes.challenge.service.store;
+
+import com.zaxxer.hikari.HikariDataSource;
+import gg.bayes.challenge.config.IngestionProperties;
+import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
+import gg.bayes.challenge.persistence.model.MatchEntity;
+import gg.bayes.challenge.persistence.model.NameEntity;
+import gg.bayes.challenge.persistence.repository.CombatLogEntryRepository;
+import gg.bayes.challenge.persistence.repository.HeroDamageRepository;
+import gg.bayes.challenge.persistence.repository.HeroKillsRepository;
+import gg.bayes.challenge.persistence.repository.HeroSpellCastsRepository;
+import gg.bayes.challenge.persistence.repository.MatchRepository;
+import gg.bayes.challenge.persistence.repository.NameRepository;
+import gg.bayes.challenge.rest.model.HeroDamage;
+import gg.bayes.challenge.rest.model.HeroItem;
+import gg.bayes.challenge.rest.model.HeroKills;
+import gg.bayes.challenge.rest.model.HeroSpells;
+import gg.bayes.challenge.rest.model.HeroSummary;
+import gg.bayes.challenge.rest.model.TimelineEvent;
+import gg.bayes.challenge.service.parser.CombatLogEvent;
+import gg.bayes.challenge.service.parser.NameDictionary;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Stores matches in the relational database.
+ * <p>
+ * Entries are written in JDBC batches of {@link IngestionProperties#getBatchSize()} and detached afterwards, so the
+ * memory used per match does not grow with the size of the log. Unless disabled with
+ * {@link IngestionProperties#isRollups()}, per hero kills, spell casts and damage are rolled up along the way and
+ * stored in summary tables; otherwise the reads aggregate the raw entries in SQL.
+ * <p>
+ * Hero, ability and item names are stored once in {@code dota_name}, keyed by their {@link NameDictionary} id, and
+ * referenced from the entries by foreign key. New names are inserted and committed in their own transaction before the
+ * first batch referencing them is flushed, so concurrent uploads never wait on each other's names. That transaction
+ * runs on a connection of its own, outside the pool: an ingestion already holds a pooled connection for its entries,
+ * and with every pooled connection held that way a second one could never be had.
+ * <p>
+ * The size of every flushed batch and the time its flush took are recorded as {@code dota.ingest.batch.size} and
+ * {@code dota.ingest.batch.flush}.
+ * <p>
+ * Each read runs a single DTO query inside one read-only transaction. Nothing is loaded into the persistence context,
+ * and the match itself is only looked up when the query returns no rows. Reads limited to a {@link TimeRange} can not
+ * use the rollups and aggregate the entries of the window in SQL.
+ */
+@Component
+@ConditionalOnProperty(name = "dota.store", havingValue = "jpa", matchIfMissing = true)
+public class JpaMatchStore implements MatchStore {
+    private final MatchRepository matchRepository;
+    private final CombatLogEntryRepository combatLogEntryRepository;
+    private final HeroKillsRepository heroKillsRepository;
+    private final HeroSpellCastsRepository heroSpellCastsRepository;
+    private final HeroDamageRepository heroDamageRepository;
+    private final NameRepository nameRepository;
+    private final NameDictionary names;
+    private final EntityManager entityManager;
+    private final HikariDataSource nameDataSource;
+    private final JdbcTemplate nameJdbc;
+    private final TransactionTemplate nameTransaction;
+    private final int batchSize;
+    private final boolean rollups;
+    private final DistributionSummary batchSizes;
+    private final Timer flushTimer;
+    private final Object nameLock = new Object();
+    private volatile int persistedNames;
+
+    @Autowired
+    public JpaMatchStore(MatchRepository matchRepository, CombatLogEntryRepository combatLogEntryRepository,
+                         HeroKillsRepository heroKillsRepository, HeroSpellCastsRepository heroSpellCastsRepository,
+                         HeroDamageRepository heroDamageRepository, NameRepository nameRepository,
+                         NameDictionary names, EntityManager entityManager,
+                         DataSourceProperties dataSourceProperties, IngestionProperties ingestionProperties,
+                         MeterRegistry meterRegistry) {
+        this.matchRepository = matchRepository;
+        this.combatLogEntryRepository = combatLogEntryRepository;
+        this.heroKillsRepository = heroKillsRepository;
+        this.heroSpellCastsRepository = heroSpellCastsRepository;
+        this.heroDamageRepository = heroDamageRepository;
+        this.nameRepository = nameRepository;
+        this.names = names;
+        this.entityManager = entityManager;
+        this.nameDataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        this.nameDataSource.setPoolName("dota-names");
+        this.nameDataSource.setMaximumPoolSize(1);
+        this.nameDataSource.setMinimumIdle(0);
+        this.nameJdbc = new JdbcTemplate(nameDataSource);
+        this.nameTransaction = new TransactionTemplate(new DataSourceTransactionManager(nameDataSource));
+        this.batchSize = ingestionProperties.getBatchSize();
+        this.rollups = ingestionProperties.isRollups();
+        this.batchSizes = DistributionSummary.builder("dota.ingest.batch.size")
+                .description("Combat log entries written per JDBC batch")
+                .baseUnit("entries")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("dota.ingest.batch.flush")
+                .description("Time spent writing a batch of combat log entries")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Registers the names already stored in {@code dota_name}, so their ids stay the same across restarts.
+     */
+    @PostConstruct
+    void loadNames() {
+        for (NameEntity name : nameRepository.findAllByOrderByIdAsc()) {
+            if (names.idOf(name.getName()) != name.getId()) {
+                throw new IllegalStateException("Name " + name.getName() + " is stored with id " + name.getId()
+                        + " but registered with id " + names.find(name.getName()));
+            }
+        }
+        persistedNames = names.size();
+    }
+
+    @PreDestroy
+    void closeNameDataSource() {
+        nameDataSource.close();
+    }
+
+    @Override
+    @Transactional
+    public long save(CombatLogEventSource events) throws IOException {
+        return save(events, null);
+    }
+
+    @Override
+    @Transactional
+    public long save(CombatLogEventSource events, String contentHash) throws IOException {
+        List<CombatLogEntryEntity> batch = new ArrayList<>(batchSize);
+        long matchId = store(events, contentHash, batch);
+        flush(batch);
+        return matchId;
+    }
+
+    /**
+     * Stores all matches in one transaction. The entries of consecutive matches share JDBC batches, so a batch is only
+     * sent short at the very end.
+     */
+    @Override
+    @Transactional
+    public List<Long> saveAll(List<CombatLogEventSource> matches) throws IOException {
+        return saveAll(matches, Collections.nCopies(matches.size(), null));
+    }
+
+    @Override
+    @Transactional
+    public List<Long> saveAll(List<CombatLogEventSource> matches, List<String> contentHashes) throws IOException {
+        List<CombatLogEntryEntity> batch = new ArrayList<>(batchSize);
+        List<Long> matchIds = new ArrayList<>(matches.size());
+        for (int i = 0; i < matches.size(); i++) {
+            matchIds.add(store(matches.get(i), contentHashes.get(i), batch));
+        }
+        flush(batch);
+        return matchIds;
+    }
+
+    /**
+     * Stores the entries like {@link #save(CombatLogEventSource, String)} and adds their rollup to the stored one. Appends to
+     * the same match must not run concurrently, or rollup updates may be lost.
+     */
+    @Override
+    @Transactional
+    public boolean append(long matchId, CombatLogEventSource events) throws IOException {
+        Optional<MatchEntity> match = matchRepository.findById(matchId);
+        if (match.isEmpty()) {
+            return false;
+        }
+        match.get().setContentHash(null);
+        List<CombatLogEntryEntity> batch = new ArrayList<>(batchSize);
+        MatchRollup rollup = addEntries(match.get(), events, batch);
+        if (rollup != null) {
+            // the entry flushes detach everything, so the stored rows are loaded only now
+            heroKillsRepository.saveAll(
+                    rollup.addHeroKillsTo(heroKillsRepository.findByMatchId(matchId), match.get()));
+            heroSpellCastsRepository.saveAll(
+                    rollup.addHeroSpellCastsTo(heroSpellCastsRepository.findByMatchId(matchId), match.get()));
+            heroDamageRepository.saveAll(
+                    rollup.addHeroDamageTo(heroDamageRepository.findByMatchId(matchId), match.get()));
+        }
+        flush(batch);
+        return true;
+    }
+
+    // leaves the last entries of the match in the batch, to be flushed by the caller
+    private long store(CombatLogEventSource events, String contentHash, List<CombatLogEntryEntity> batch)
+            throws IOException {
+        MatchEntity match = new MatchEntity();
+        match.setContentHash(contentHash);
+        match = matchRepository.save(match);
+        MatchRollup rollup = addEntries(match, events, batch);
+        if (rollup != null) {
+            heroKillsRepository.saveAll(rollup.heroKills(match));
+            heroSpellCastsRepository.saveAll(rollup.heroSpellCasts(match));
+            heroDamageRepository.saveAll(rollup.heroDamage(match));
+        }
+        return match.getId();
+    }
+
+    // returns the rollup of the added entries, null if rollups are disabled
+    private MatchRollup addEntries(MatchEntity match, CombatLogEventSource events, List<CombatLogEntryEntity> batch)
+            throws IOException {
+        MatchRollup rollup = rollups ? new MatchRollup() : null;
+        events.forEach(event -> {
+            batch.add(toEntity(event, match));
+            if (rollup != null) {
+                rollup.add(event);
+            }
+            if (batch.size() == batchSize) {
+                flush(batch);
+            }
+        });
+        return rollup;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Long> findByContentHash(String contentHash) {
+        return matchRepository.findIdsByContentHash(contentHash).stream().findFirst();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Long> getMatchIds() {
+        return matchRepository.findAllIds();
+    }
+
+    @Override
+    @Transactional
+    public boolean delete(long matchId) {
+        if (!matchRepository.existsById(matchId)) {
+            return false;
+        }
+        combatLogEntryRepository.deleteByMatchId(matchId);
+        heroKillsRepository.deleteByMatchId(matchId);
+        heroSpellCastsRepository.deleteByMatchId(matchId);
+        heroDamageRepository.deleteByMatchId(matchId);
+        matchRepository.deleteById(matchId);
+        return true;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<List<HeroKills>> getHeroKills(long matchId, TimeRange range) {
+        if (!range.isAll()) {
+            return ifMatchExists(matchId,
+                    () -> combatLogEntryRepository.countKillsBetween(matchId, range.fromOrMin(), range.toOrMax()));
+        }
+        return ifMatchExists(matchId, () -> rollups
+                ? heroKillsRepository.findHeroKills(matchId)
+                : combatLogEntryRepository.countKills(matchId));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<List<HeroItem>> getHeroItems(long matchId, String heroName, TimeRange range) {
+        if (!range.isAll()) {
+            return ifMatchExists(matchId, () -> combatLogEntryRepository.findItemPurchasesBetween(
+                    matchId, heroName, range.fromOrMin(), range.toOrMax()));
+        }
+        return ifMatchExists(matchId, () -> combatLogEntryRepository.findItemPurchases(matchId, heroName));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<List<HeroSpells>> getHeroSpells(long matchId, String heroName, TimeRange range) {
+        if (!range.isAll()) {
+            return ifMatchExists(matchId, () -> combatLogEntryRepository.countSpellCastsBetween(
+                    matchId, heroName, range.fromOrMin(), range.toOrMax()));
+        }
+        return ifMatchExists(matchId, () -> rollups
+                ? heroSpellCastsRepository.findHeroSpells(matchId, heroName)
+                : combatLogEntryRepository.countSpellCasts(matchId, heroName));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<List<HeroDamage>> getHeroDamages(long matchId, String heroName, TimeRange range) {
+        if (!range.isAll()) {
+            return ifMatchExists(matchId, () -> combatLogEntryRepository.sumDamageDealtBetween(
+                    matchId, heroName, range.fromOrMin(), range.toOrMax()));
+        }
+        return ifMatchExists(matchId, () -> rollups
+                ? heroDamageRepository.findDamageDealt(matchId, heroName)
+                : combatLogEntryRepository.sumDamageDealt(matchId, heroName));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<List<TimelineEvent>> getTimeline(long matchId, TimeRange range) {
+        return ifMatchExists(matchId,
+                () -> combatLogEntryRepository.findTimeline(matchId, range.fromOrMin(), range.toOrMax()));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<List<HeroSummary>> getSummary(long matchId, TimeRange range) {
+        return ifMatchExists(matchId, () -> {
+            MatchSummaryBuilder summary = new MatchSummaryBuilder();
+            try (Stream<TimelineEvent> events =
+                         combatLogEntryRepository.streamTimeline(matchId, range.fromOrMin(), range.toOrMax())) {
+                events.forEach(summary::add);
+            }
+            return summary.build();
+        });
+    }
+
+    private <T> Optional<List<T>> ifMatchExists(long matchId, Supplier<List<T>> query) {
+        List<T> result = query.get();
+        if (result.isEmpty() && !matchRepository.existsById(matchId)) {
+            return Optional.empty();
+        }
+        return Optional.of(result);
+    }
+
+    private void flush(List<CombatLogEntryEntity> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        persistNewNames();
+        combatLogEntryRepository.saveAll(batch);
+        entityManager.flush();
+        entityManager.clear();
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSizes.record(batch.size());
+        batch.clear();
+    }
+
+    private void persistNewNames() {
+        if (persistedNames == names.size()) {
+            return;
+        }
+        synchronized (nameLock) {
+            int size = names.size();
+            if (persistedNames == size) {
+                return;
+            }
+            List<Object[]> rows = new ArrayList<>(size - persistedNames);
+            for (int id = persistedNames; id < size; id++) {
+                rows.add(new Object[]{id, names.name(id)});
+            }
+            nameTransaction.executeWithoutResult(
+                    status -> nameJdbc.batchUpdate("insert into dota_name (id, name) values (?, ?)", rows));
+            persistedNames = size;
+        }
+    }
+
+    private Integer nameId(String name) {
+        return name == null ? null : names.idOf(name);
+    }
+
+    private CombatLogEntryEntity toEntity(CombatLogEvent event, MatchEntity match) {
+        CombatLogEntryEntity entry = new CombatLogEntryEntity();
+        entry.setMatch(match);
+        entry.setTimestamp(event.getTimestamp());
+        entry.setType(event.getType());
+        entry.setActorId(nameId(event.getActor()));
+        entry.setTargetId(nameId(event.getTarget()));
+        entry.setAbilityId(nameId(event.getAbility()));
+        if (event.getAbilityLevel() > 0) {
+            entry.setAbilityLevel(event.getAbilityLevel());
+        }
+        entry.setItemId(nameId(event.getItem()));
+        if (event.getType() == CombatLogEntryEntity.Type.DAMAGE_DONE) {
+            entry.setDamage(event.getDamage());
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,151 @@
+package gg.bayes.challenge.service.store;
+
+import gg.bayes.challenge.persistence.model.HeroDamageEntity;
+import gg.bayes.challenge.persistence.model.HeroKillsEntity;
+import gg.bayes.challenge.persistence.model.HeroSpellCastsEntity;
+import gg.bayes.challenge.persistence.model.MatchEntity;
+import gg.bayes.challenge.service.parser.CombatLogEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per match statistics accumulated while a combat log is parsed: kills per hero, casts per hero and spell, and damage
+ * instances and totals per attacking and damaged hero. The result is small (bounded by the number of heroes, spells
+ * and hero pairs) no matter how long the match is.
+ * <p>
+ * When events are appended to a stored match, the rollup of the appended events is added to the stored rows with the
+ * {@code add...To} methods.
+ */
+class MatchRollup {
+    private final Map<String, int[]> killsByHero = new HashMap<>();
+    private final Map<String, Map<String, int[]>> castsByHero = new HashMap<>();
+    private final Map<String, Map<String, int[]>> damageByActor = new HashMap<>();
+
+    void add(CombatLogEvent event) {
+        // every hero taking part in the match is listed with its kills, even if it has none
+        int[] kills = killsByHero.computeIfAbsent(event.getActor(), hero -> new int[1]);
+        if (event.getTarget() != null) {
+            killsByHero.computeIfAbsent(event.getTarget(), hero -> new int[1]);
+        }
+        switch (event.getType()) {
+            case HERO_KILLED:
+                kills[0]++;
+                break;
+            case SPELL_CAST:
+                castsByHero.computeIfAbsent(event.getActor(), hero -> new HashMap<>())
+                        .computeIfAbsent(event.getAbility(), spell -> new int[1])[0]++;
+                break;
+            case DAMAGE_DONE:
+                int[] damage = damageByActor.computeIfAbsent(event.getActor(), hero -> new HashMap<>())
+                        .computeIfAbsent(event.getTarget(), hero -> new int[2]);
+                damage[0]++;
+                damage[1] += event.getDamage();
+                break;
+            default:
+                break;
+        }
+    }
+
+    List<HeroKillsEntity> heroKills(MatchEntity match) {
+        List<HeroKillsEntity> result = new ArrayList<>(killsByHero.size());
+        killsByHero.forEach((hero, kills) -> {
+            HeroKillsEntity entity = new HeroKillsEntity();
+            entity.setMatch(match);
+            entity.setHero(hero);
+            entity.setKills(kills[0]);
+            result.add(entity);
+        });
+        return result;
+    }
+
+    List<HeroSpellCastsEntity> heroSpellCasts(MatchEntity match) {
+        List<HeroSpellCastsEntity> result = new ArrayList<>();
+        castsByHero.forEach((hero, spells) -> spells.forEach((spell, casts) -> {
+            HeroSpellCastsEntity entity = new HeroSpellCastsEntity();
+            entity.setMatch(match);
+            entity.setHero(hero);
+            entity.setSpell(spell);
+            entity.setCasts(casts[0]);
+            result.add(entity);
+        }));
+        return result;
+    }
+
+    List<HeroDamageEntity> heroDamage(MatchEntity match) {
+        List<HeroDamageEntity> result = new ArrayList<>();
+        damageByActor.forEach((actor, targets) -> targets.forEach((target, damage) -> {
+            HeroDamageEntity entity = new HeroDamageEntity();
+            entity.setMatch(match);
+            entity.setActor(actor);
+            entity.setTarget(target);
+            entity.setDamageInstances(damage[0]);
+            entity.setTotalDamage(damage[1]);
+            result.add(entity);
+        }));
+        return result;
+    }
+
+    /**
+     * Adds the kills to the stored rows of the match.
+     *
+     * @return the rows of heroes that had none yet, to be persisted
+     */
+    List<HeroKillsEntity> addHeroKillsTo(List<HeroKillsEntity> stored, MatchEntity match) {
+        Map<String, HeroKillsEntity> rows = new HashMap<>();
+        stored.forEach(row -> rows.put(row.getHero(), row));
+        List<HeroKillsEntity> created = new ArrayList<>();
+        for (HeroKillsEntity delta : heroKills(match)) {
+            HeroKillsEntity row = rows.get(delta.getHero());
+            if (row == null) {
+                created.add(delta);
+            } else {
+                row.setKills(row.getKills() + delta.getKills());
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Adds the spell casts to the stored rows of the match.
+     *
+     * @return the rows of hero and spell pairs that had none yet, to be persisted
+     */
+    List<HeroSpellCastsEntity> addHeroSpellCastsTo(List<HeroSpellCastsEntity> stored, MatchEntity match) {
+        Map<List<String>, HeroSpellCastsEntity> rows = new HashMap<>();
+        stored.forEach(row -> rows.put(List.of(row.getHero(), row.getSpell()), row));
+        List<HeroSpellCastsEntity> created = new ArrayList<>();
+        for (HeroSpellCastsEntity delta : heroSpellCasts(match)) {
+            HeroSpellCastsEntity row = rows.get(List.of(delta.getHero(), delta.getSpell()));
+            if (row == null) {
+                created.add(delta);
+            } else {
+                row.setCasts(row.getCasts() + delta.getCasts());
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Adds the damage to the stored rows of the match.
+     *
+     * @return the rows of hero pairs that had none yet, to be persisted
+     */
+    List<HeroDamageEntity> addHeroDamageTo(List<HeroDamageEntity> stored, MatchEntity match) {
+        Map<List<String>, HeroDamageEntity> rows = new HashMap<>();
+        stored.forEach(row -> rows.put(List.of(row.getActor(), row.getTarget()), row));
+        List<HeroDamageEntity> created = new ArrayList<>();
+        for (HeroDamageEntity delta : heroDamage(match)) {
+            HeroDamageEntity row = rows.get(List.of(delta.getActor(), delta.getTarget()));
+            if (row == null) {
+                created.add(delta);
+            } else {
+                row.setDamageInstances(row.getDamageInstances() + delta.getDamageInstances());
+                row.setTotalDamage(row.getTotalDamage() + delta.getTotalDamage());
+            }
+        }
+        return created;
+    }
+}
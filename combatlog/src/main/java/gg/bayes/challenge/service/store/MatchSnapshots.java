@@ -0,0 +1,248 @@
+package gg.bayes.challenge.service.store;
+
+import gg.bayes.challenge.service.parser.NameDictionary;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary snapshots of {@link ColumnarMatch}es in a directory: one {@code <match id>.match} file per match, see
+ * {@link ColumnarMatch#writeSnapshot(ByteBuffer)}, and the {@code names.dict} file holding the {@link NameDictionary}
+ * the snapshots refer to.
+ * <p>
+ * The dictionary file lists the names in id order, each as an int length followed by its UTF-8 bytes. It is only
+ * appended to, and always before the snapshots using the new names are written, so every snapshot on disk can be
+ * decoded. A snapshot is written to a temporary file that is then renamed, so a crash never leaves a partial one.
+ * Events appended to a stored match are added to the end of its file as a record in the snapshot format, see
+ * {@link #append(long, ColumnarMatch)}, so a live match is not rewritten on every segment. Snapshots are loaded by
+ * mapping the files, not by reading them; appended records are copied to the heap.
+ * <p>
+ * The {@code sequence} file holds the highest match id handed out, or reserved to be, so the ids of deleted matches
+ * are not reused after a restart.
+ */
+@Slf4j
+class MatchSnapshots {
+    private static final String NAMES_FILE = "names.dict";
+    private static final String SEQUENCE_FILE = "sequence";
+    private static final String MATCH_SUFFIX = ".match";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final NameDictionary names;
+    private int storedNames;
+
+    MatchSnapshots(Path directory, NameDictionary names) {
+        this.directory = directory;
+        this.names = names;
+    }
+
+    /**
+     * Registers the stored names in the dictionary and maps all stored matches. Must run before the dictionary is
+     * used otherwise, as the stored names have to keep their ids.
+     *
+     * @return the stored matches by id
+     * @throws IOException           if the directory can not be read
+     * @throws IllegalStateException if the dictionary already assigned some ids differently
+     */
+    Map<Long, ColumnarMatch> load() throws IOException {
+        Files.createDirectories(directory);
+        loadNames();
+        Map<Long, ColumnarMatch> matches = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(TEMPORARY_SUFFIX)) {
+                    Files.delete(file);
+                } else if (fileName.endsWith(MATCH_SUFFIX)) {
+                    long matchId = Long.parseLong(fileName.substring(0, fileName.length() - MATCH_SUFFIX.length()));
+                    try {
+                        matches.put(matchId, read(file));
+                    } catch (IllegalArgumentException e) {
+                        log.warn("Skipping match snapshot {}: {}", file, e.getMessage());
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Writes the snapshot of the match, replacing the previous one if any.
+     *
+     * @return the match read back from the mapped snapshot, to be used in place of {@code match}
+     */
+    ColumnarMatch write(long matchId, ColumnarMatch match) throws IOException {
+        storeNames();
+        Path file = matchFile(matchId);
+        Path temporary = file.resolveSibling(file.getFileName() + TEMPORARY_SUFFIX);
+        MappedByteBuffer snapshot;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            snapshot = channel.map(FileChannel.MapMode.READ_WRITE, 0, match.snapshotSize());
+            match.writeSnapshot(snapshot);
+            snapshot.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return ColumnarMatch.fromSnapshot(names, snapshot.flip());
+    }
+
+    /**
+     * Appends the events of {@code segment} to the stored snapshot of the match, as a record of their own, so this
+     * costs the size of the segment rather than that of the match. The segment must
+     * {@link ColumnarMatch#isFollowedBy(ColumnarMatch) follow} the stored events, otherwise the whole match has to be
+     * written again. A failed append is truncated away.
+     */
+    void append(long matchId, ColumnarMatch segment) throws IOException {
+        storeNames();
+        ByteBuffer record = ByteBuffer.allocate(segment.snapshotSize());
+        segment.writeSnapshot(record);
+        record.flip();
+        try (FileChannel channel = FileChannel.open(matchFile(matchId), StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            try {
+                channel.position(end);
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                try {
+                    channel.truncate(end);
+                } catch (IOException truncateFailure) {
+                    e.addSuppressed(truncateFailure);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return the value last passed to {@link #storeSequence(long)}, 0 if there is none
+     */
+    long loadSequence() throws IOException {
+        Path file = directory.resolve(SEQUENCE_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(file, StandardCharsets.US_ASCII).trim());
+    }
+
+    /**
+     * Durably replaces the stored sequence value.
+     */
+    void storeSequence(long value) throws IOException {
+        Path file = directory.resolve(SEQUENCE_FILE);
+        Path temporary = file.resolveSibling(SEQUENCE_FILE + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer content = ByteBuffer.wrap(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Deletes the snapshot of the match. The pages stay valid for the queries already reading them.
+     */
+    void delete(long matchId) throws IOException {
+        Files.deleteIfExists(matchFile(matchId));
+    }
+
+    private Path matchFile(long matchId) {
+        return directory.resolve(matchId + MATCH_SUFFIX);
+    }
+
+    // the snapshot, followed by the records appended to it
+    private ColumnarMatch read(Path file) throws IOException {
+        ByteBuffer buffer = map(file);
+        ColumnarMatch match = ColumnarMatch.fromSnapshot(names, buffer);
+        int position = ColumnarMatch.snapshotSize(buffer);
+        while (position < buffer.limit()) {
+            ByteBuffer record = buffer.duplicate().position(position).slice();
+            ColumnarMatch segment;
+            try {
+                segment = ColumnarMatch.fromSnapshot(names, record);
+            } catch (IllegalArgumentException e) {
+                // the tail of an append interrupted by a crash
+                log.warn("Truncating {} from {} to {} bytes: {}", file, buffer.limit(), position, e.getMessage());
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(position);
+                }
+                break;
+            }
+            match = match.append(segment);
+            position += ColumnarMatch.snapshotSize(record);
+        }
+        return match;
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private synchronized void loadNames() throws IOException {
+        Path file = directory.resolve(NAMES_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        ByteBuffer buffer = map(file);
+        int complete = 0;
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt(buffer.position());
+            if (length < 0 || buffer.remaining() < Integer.BYTES + length) {
+                break;
+            }
+            byte[] name = new byte[length];
+            buffer.position(buffer.position() + Integer.BYTES).get(name);
+            int id = names.idOf(new String(name, StandardCharsets.UTF_8));
+            if (id != storedNames) {
+                throw new IllegalStateException("Name dictionary was used before the snapshots were loaded");
+            }
+            storedNames++;
+            complete = buffer.position();
+        }
+        if (complete < buffer.limit()) {
+            // the tail of an append interrupted by a crash, no snapshot refers to it
+            log.warn("Truncating {} from {} to {} bytes", file, buffer.limit(), complete);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(complete);
+            }
+        }
+    }
+
+    private synchronized void storeNames() throws IOException {
+        int size = names.size();
+        if (storedNames == size) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory.resolve(NAMES_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (int id = storedNames; id < size; id++) {
+                byte[] name = names.name(id).getBytes(StandardCharsets.UTF_8);
+                ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + name.length).putInt(name.length).put(name);
+                entry.flip();
+                while (entry.hasRemaining()) {
+                    channel.write(entry);
+                }
+            }
+            channel.force(false);
+        }
+        storedNames = size;
+    }
+}
@@ -0,0 +1,130 @@
+package gg.bayes.challenge.service.store;
+
+import gg.bayes.challenge.rest.model.HeroDamage;
+import gg.bayes.challenge.rest.model.HeroItem;
+import gg.bayes.challenge.rest.model.HeroKills;
+import gg.bayes.challenge.rest.model.HeroSpells;
+import gg.bayes.challenge.rest.model.HeroSummary;
+import gg.bayes.challenge.rest.model.TimelineEvent;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Storage backend for parsed matches. The implementation is selected with the {@code dota.store} property:
+ * {@code jpa} (default) keeps matches in the relational database, {@code columnar} keeps them in memory as primitive
+ * columns, optionally backed by memory mapped snapshot files. The read methods return an empty {@link Optional} if
+ * the match does not exist, and only consider the events within the given {@link TimeRange}.
+ */
+public interface MatchStore {
+
+    /**
+     * Stores all events of the given source as a new match. If the source throws, nothing is stored.
+     *
+     * @param events the parsed events of the match
+     * @return the id of the new match
+     * @throws IOException if the events can not be read
+     */
+    default long save(CombatLogEventSource events) throws IOException {
+        return save(events, null);
+    }
+
+    /**
+     * Stores all events of the given source as a new match, found by {@link #findByContentHash(String)} afterwards.
+     * If the source throws, nothing is stored.
+     *
+     * @param events      the parsed events of the match
+     * @param contentHash the hash of the combat log the events were parsed from, may be {@code null}
+     * @return the id of the new match
+     * @throws IOException if the events can not be read
+     */
+    long save(CombatLogEventSource events, String contentHash) throws IOException;
+
+    /**
+     * @return the match stored with the given content hash and not appended to since, the oldest one if several are
+     */
+    Optional<Long> findByContentHash(String contentHash);
+
+    /**
+     * @return the ids of all stored matches, in ascending order
+     */
+    List<Long> getMatchIds();
+
+    /**
+     * Stores each source as a new match, without content hashes.
+     *
+     * @see #saveAll(List, List)
+     */
+    default List<Long> saveAll(List<CombatLogEventSource> matches) throws IOException {
+        return saveAll(matches, Collections.nCopies(matches.size(), null));
+    }
+
+    /**
+     * Stores each source as a new match, found by {@link #findByContentHash(String)} afterwards. Backends that write
+     * in batches share them across the matches. All or none of the matches are stored: if any source throws or any
+     * match can not be stored, none of them is kept, so the caller may store them again.
+     *
+     * @param matches       the parsed events of each match
+     * @param contentHashes the hash of the combat log of each match, in the order of {@code matches}; an element may
+     *                      be {@code null}
+     * @return the ids of the new matches, in the order of {@code matches}
+     * @throws IOException if the events can not be read
+     */
+    List<Long> saveAll(List<CombatLogEventSource> matches, List<String> contentHashes) throws IOException;
+
+    /**
+     * Adds the events of the source to an existing match, after the events it already has. Readers see either none or
+     * all of the appended events. If the source throws, nothing is appended. The match loses its content hash, as it
+     * no longer matches the uploaded log.
+     *
+     * @param matchId the match to extend
+     * @param events  the parsed events to add
+     * @return {@code false} if the match does not exist
+     * @throws IOException if the events can not be read
+     */
+    boolean append(long matchId, CombatLogEventSource events) throws IOException;
+
+    /**
+     * Deletes the match and everything stored for it.
+     *
+     * @return {@code false} if the match does not exist
+     */
+    boolean delete(long matchId);
+
+    Optional<List<HeroKills>> getHeroKills(long matchId, TimeRange range);
+
+    Optional<List<HeroItem>> getHeroItems(long matchId, String heroName, TimeRange range);
+
+    Optional<List<HeroSpells>> getHeroSpells(long matchId, String heroName, TimeRange range);
+
+    Optional<List<HeroDamage>> getHeroDamages(long matchId, String heroName, TimeRange range);
+
+    /**
+     * @return the events of the match in the window, ordered by timestamp
+     */
+    Optional<List<TimelineEvent>> getTimeline(long matchId, TimeRange range);
+
+    /**
+     * @return the kills, items, spell casts and damage dealt of every hero of the match in the window, computed in one
+     * pass over its events; each hero's lists equal the per hero queries
+     */
+    Optional<List<HeroSummary>> getSummary(long matchId, TimeRange range);
+
+    default Optional<List<HeroKills>> getHeroKills(long matchId) {
+        return getHeroKills(matchId, TimeRange.ALL);
+    }
+
+    default Optional<List<HeroItem>> getHeroItems(long matchId, String heroName) {
+        return getHeroItems(matchId, heroName, TimeRange.ALL);
+    }
+
+    default Optional<List<HeroSpells>> getHeroSpells(long matchId, String heroName) {
+        return getHeroSpells(matchId, heroName, TimeRange.ALL);
+    }
+
+    default Optional<List<HeroDamage>> getHeroDamages(long matchId, String heroName) {
+        return getHeroDamages(matchId, heroName, TimeRange.ALL);
+    }
+}
@@ -0,0 +1,81 @@
+package gg.bayes.challenge.service.store;
+
+import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
+import gg.bayes.challenge.rest.model.HeroDamage;
+import gg.bayes.challenge.rest.model.HeroItem;
+import gg.bayes.challenge.rest.model.HeroSpells;
+import gg.bayes.challenge.rest.model.HeroSummary;
+import gg.bayes.challenge.rest.model.TimelineEvent;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the statistics of every hero of a match in a single pass over its events, which are fed in timestamp
+ * order. Every list is ordered like the result of the matching per hero query, and the heroes like
+ * {@link MatchStore#getHeroKills(long, TimeRange)}. Not thread safe.
+ */
+class MatchSummaryBuilder {
+    private final Map<String, Hero> heroes = new HashMap<>();
+
+    void add(TimelineEvent event) {
+        add(event.getType(), event.getActor(), event.getTarget(), event.getAbility(), event.getItem(),
+                event.getDamage() != null ? event.getDamage() : 0, event.getTimestamp());
+    }
+
+    void add(CombatLogEntryEntity.Type type, String actor, String target, String ability, String item, int damage,
+             long timestamp) {
+        Hero hero = hero(actor);
+        if (target != null) {
+            hero(target);
+        }
+        switch (type) {
+            case HERO_KILLED:
+                hero.kills++;
+                break;
+            case ITEM_PURCHASED:
+                hero.items.add(new HeroItem(item, timestamp));
+                break;
+            case SPELL_CAST:
+                hero.spells.computeIfAbsent(ability, key -> new int[1])[0]++;
+                break;
+            case DAMAGE_DONE:
+                int[] dealt = hero.damage.computeIfAbsent(target, key -> new int[2]);
+                dealt[0]++;
+                dealt[1] += damage;
+                break;
+            default:
+                break;
+        }
+    }
+
+    List<HeroSummary> build() {
+        List<HeroSummary> result = new ArrayList<>(heroes.size());
+        heroes.forEach((name, hero) -> {
+            List<HeroSpells> spells = new ArrayList<>(hero.spells.size());
+            hero.spells.forEach((spell, casts) -> spells.add(new HeroSpells(spell, casts[0])));
+            spells.sort(Comparator.comparing(HeroSpells::getCasts).reversed().thenComparing(HeroSpells::getSpell));
+            List<HeroDamage> damage = new ArrayList<>(hero.damage.size());
+            hero.damage.forEach((target, dealt) -> damage.add(new HeroDamage(target, dealt[0], dealt[1])));
+            damage.sort(Comparator.comparing(HeroDamage::getTotalDamage).reversed()
+                    .thenComparing(HeroDamage::getTarget));
+            result.add(new HeroSummary(name, hero.kills, hero.items, spells, damage));
+        });
+        result.sort(Comparator.comparing(HeroSummary::getKills).reversed().thenComparing(HeroSummary::getHero));
+        return result;
+    }
+
+    private Hero hero(String name) {
+        return heroes.computeIfAbsent(name, key -> new Hero());
+    }
+
+    private static class Hero {
+        private int kills;
+        private final List<HeroItem> items = new ArrayList<>();
+        private final Map<String, int[]> spells = new HashMap<>();
+        private final Map<String, int[]> damage = new HashMap<>();
+    }
+}
@@ -0,0 +1,37 @@
+package gg.bayes.challenge.service.store;
+
+import lombok.Value;
+
+/**
+ * A window of match time in milliseconds, {@code from} inclusive and {@code to} exclusive. Either bound may be
+ * {@code null}, leaving the window open on that side.
+ */
+@Value
+public class TimeRange {
+    public static final TimeRange ALL = new TimeRange(null, null);
+
+    Long from;
+    Long to;
+
+    /**
+     * @throws IllegalArgumentException if {@code to} is before {@code from}
+     */
+    public static TimeRange of(Long from, Long to) {
+        if (from != null && to != null && to < from) {
+            throw new IllegalArgumentException("Time range ends at " + to + " before it starts at " + from);
+        }
+        return from == null && to == null ? ALL : new TimeRange(from, to);
+    }
+
+    public boolean isAll() {
+        return from == null && to == null;
+    }
+
+    public long fromOrMin() {
+        return from != null ? from : Long.MIN_VALUE;
+    }
+
+    public long toOrMax() {
+        return to != null ? to : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,107 @@
+package gg.bayes.challenge.load;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Latency of {@code GET /api/match/{id}/{hero}/damage} with many concurrent clients. Each client sends its requests
+ * one after another over its own connection. Excluded from the default build, run it with
+ * <pre>
+ * mvn test -Pload-test [-Dload.clients=1000] [-Dload.requests=20] [-Ddota.web.virtual-threads=true]
+ * </pre>
+ * Virtual threads require running Maven on Java 21 or later.
+ */
+@Slf4j
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class DamageEndpointLoadTest {
+    private static final int CLIENTS = Integer.getInteger("load.clients", 1000);
+    private static final int REQUESTS = Integer.getInteger("load.requests", 20);
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void damageEndpointLatency() throws Exception {
+        ExecutorService clientThreads = Executors.newFixedThreadPool(8);
+        try {
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(clientThreads)
+                    .build();
+            String matchId = client.send(HttpRequest.newBuilder(uri("/api/match"))
+                            .header("Content-Type", "text/plain")
+                            .POST(HttpRequest.BodyPublishers.ofInputStream(
+                                    () -> getClass().getResourceAsStream("/data/combatlog_1.log.txt")))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString()).body();
+            HttpRequest request = HttpRequest.newBuilder(uri("/api/match/" + matchId + "/mars/damage"))
+                    .timeout(Duration.ofMinutes(1))
+                    .build();
+
+            run(client, request, Math.min(CLIENTS, 50), REQUESTS);
+            long[] latencies = run(client, request, CLIENTS, REQUESTS);
+
+            Arrays.sort(latencies);
+            log.info("{} clients x {} requests on {} threads: p50 {} ms, p99 {} ms, max {} ms",
+                    CLIENTS, REQUESTS, System.getProperty("dota.web.virtual-threads", "false").equals("true")
+                            ? "virtual" : "platform",
+                    percentile(latencies, 50), percentile(latencies, 99), latencies[latencies.length - 1] / 1_000_000);
+        } finally {
+            clientThreads.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the latency of every request in nanoseconds
+     */
+    private static long[] run(HttpClient client, HttpRequest request, int clients, int requests) {
+        long[] latencies = new long[clients * requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        CompletableFuture<?>[] runs = new CompletableFuture<?>[clients];
+        for (int i = 0; i < clients; i++) {
+            CompletableFuture<Void> run = CompletableFuture.completedFuture(null);
+            for (int r = 0; r < requests; r++) {
+                run = run.thenCompose(ignored -> {
+                    long start = System.nanoTime();
+                    return client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).thenAccept(response -> {
+                        latencies[next.getAndIncrement()] = System.nanoTime() - start;
+                        if (response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                        }
+                    });
+                });
+            }
+            runs[i] = run;
+        }
+        CompletableFuture.allOf(runs).join();
+        assertThat(errors.get()).isZero();
+        return latencies;
+    }
+
+    private static long percentile(long[] sortedNanos, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1_000_000;
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+}
@@ -0,0 +1,57 @@
+package gg.bayes.challenge.load;
+
+import gg.bayes.challenge.persistence.repository.CombatLogEntryRepository;
+import gg.bayes.challenge.service.CombatLogParserService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Ingests the bundled sample logs into the JPA store and checks the rows/s reached, once the JVM is warm. The floor is
+ * deliberately conservative so that slow build machines pass, raise it to the target on a known machine. Excluded
+ * from the default build, run it with
+ * <pre>
+ * mvn test -Pload-test -Dtest=IngestionThroughputLoadTest [-Dload.min-rows-per-second=25000]
+ * </pre>
+ */
+@Slf4j
+@Tag("load")
+@SpringBootTest
+class IngestionThroughputLoadTest {
+    private static final int MIN_ROWS_PER_SECOND = Integer.getInteger("load.min-rows-per-second", 5000);
+
+    @Autowired
+    private CombatLogParserService combatLogParserService;
+
+    @Autowired
+    private CombatLogEntryRepository combatLogEntryRepository;
+
+    @Test
+    void ingestionThroughput() throws Exception {
+        byte[] combatLog1 = IOUtils.resourceToByteArray("/data/combatlog_1.log.txt");
+        byte[] combatLog2 = IOUtils.resourceToByteArray("/data/combatlog_2.log.txt");
+        for (int i = 0; i < 3; i++) {
+            combatLogParserService.parseAndSave(new ByteArrayInputStream(combatLog1));
+            combatLogParserService.parseAndSave(new ByteArrayInputStream(combatLog2));
+        }
+
+        long rowsBefore = combatLogEntryRepository.count();
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            combatLogParserService.parseAndSave(new ByteArrayInputStream(combatLog1));
+            combatLogParserService.parseAndSave(new ByteArrayInputStream(combatLog2));
+        }
+        long nanos = System.nanoTime() - start;
+        long rows = combatLogEntryRepository.count() - rowsBefore;
+        long rowsPerSecond = rows * 1_000_000_000L / nanos;
+        log.info("Ingested {} rows in {} ms ({} rows/s)", rows, nanos / 1_000_000, rowsPerSecond);
+        assertThat(rowsPerSecond).isGreaterThanOrEqualTo(MIN_ROWS_PER_SECOND);
+    }
+}
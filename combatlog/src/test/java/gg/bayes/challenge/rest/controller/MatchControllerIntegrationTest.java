@@ -2,13 +2,21 @@ package gg.bayes.challenge.rest.controller;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.Zstd;
 import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
-import gg.bayes.challenge.persistence.model.MatchEntity;
 import gg.bayes.challenge.persistence.repository.MatchRepository;
+import gg.bayes.challenge.rest.model.BulkIngestionResult;
 import gg.bayes.challenge.rest.model.HeroDamage;
 import gg.bayes.challenge.rest.model.HeroItem;
 import gg.bayes.challenge.rest.model.HeroKills;
+import gg.bayes.challenge.rest.model.HeroSpells;
+import gg.bayes.challenge.rest.model.HeroSummary;
+import gg.bayes.challenge.rest.model.IngestionJob;
+import gg.bayes.challenge.rest.model.LeaderboardEntry;
+import gg.bayes.challenge.rest.model.TimelineEvent;
 import gg.bayes.challenge.service.MatchService;
+import gg.bayes.challenge.service.store.MatchStore;
+import gg.bayes.challenge.service.store.TimeRange;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.BeforeAll;
@@ -16,22 +24,36 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.util.Assert;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /*
@@ -39,8 +61,9 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  */
 @Slf4j
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = "dota.ingest.max-bytes=2097152")
 @AutoConfigureMockMvc
+@AutoConfigureMetrics
 class MatchControllerIntegrationTest {
 
     private static final String COMBATLOG_FILE_1 = "/data/combatlog_1.log.txt";
@@ -55,6 +78,9 @@ class MatchControllerIntegrationTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private MatchStore matchStore;
+
     @MockBean
     private MatchService matchService;
 
@@ -74,36 +100,12 @@ class MatchControllerIntegrationTest {
 
     @Test
     public void testGetMatch() throws Exception {
-        // create a test match with some data
+        // create test match statistics
         Long matchId = 12345L;
-        MatchEntity match = new MatchEntity();
-        match.setId(matchId);
-        Set<CombatLogEntryEntity> entries = new HashSet<>();
-        CombatLogEntryEntity entry = new CombatLogEntryEntity();
-        entry.setId(1l);
-        entry.setActor("Hero1");
-        entry.setTarget("TestTarget");
-        entry.setType(CombatLogEntryEntity.Type.HERO_KILLED);
-        entries.add(entry);
-        entry = new CombatLogEntryEntity();
-        entry.setId(2l);
-        entry.setActor("Hero2");
-        entry.setTarget("TestTarget");
-        entry.setType(CombatLogEntryEntity.Type.HERO_KILLED);
-        entries.add(entry);
-        entry = new CombatLogEntryEntity();
-        entry.setId(3l);
-        entry.setActor("Hero1");
-        entry.setTarget("TestTarget");
-        entry.setType(CombatLogEntryEntity.Type.HERO_KILLED);
-        entries.add(entry);
-        match.setCombatLogEntries(entries);
-        HeroKills heroKills = new HeroKills("TestHero", 10);
-        List<HeroKills> expected = new ArrayList<>();
-        expected.add(heroKills);
+        List<HeroKills> heroKills = List.of(new HeroKills("Hero1", 2), new HeroKills("Hero2", 1));
 
         // mock the MatchService to return the test match data
-        when(matchService.findById(matchId)).thenReturn(Optional.of(match));
+        when(matchService.getHeroKills(matchId, TimeRange.ALL)).thenReturn(Optional.of(heroKills));
 
         // perform the request
         MvcResult result = mvc.perform(get("/api/match/{matchId}", matchId))
@@ -123,25 +125,9 @@ class MatchControllerIntegrationTest {
         Long matchId = 1L;
         String heroName = "hero1";
 
-        // Mock the MatchService to return a match entity
-        Set<CombatLogEntryEntity> entries = new HashSet<>();
-        MatchEntity match = new MatchEntity();
-        CombatLogEntryEntity entry1 = new CombatLogEntryEntity();
-        entry1.setType(CombatLogEntryEntity.Type.ITEM_PURCHASED);
-        entry1.setActor("hero1");
-        entry1.setItem("item1");
-        entry1.setTimestamp(new Date().getTime());
-        entries.add(entry1);
-
-        CombatLogEntryEntity entry2 = new CombatLogEntryEntity();
-        entry2.setType(CombatLogEntryEntity.Type.ITEM_PURCHASED);
-        entry2.setActor("hero2");
-        entry2.setItem("item2");
-        entry1.setTimestamp(new Date().getTime());
-        entries.add(entry1);
-        match.setCombatLogEntries(entries);
-
-        Mockito.when(matchService.findById(matchId)).thenReturn(Optional.of(match));
+        // Mock the MatchService to return the item purchases of the hero
+        List<HeroItem> items = List.of(new HeroItem("item1", 530925L));
+        Mockito.when(matchService.getHeroItems(matchId, heroName, TimeRange.ALL)).thenReturn(Optional.of(items));
 
         // Perform the GET request
         MvcResult mvcResult = mvc.perform(get("/api/match/" + matchId + "/" + heroName + "/items")
@@ -154,47 +140,17 @@ class MatchControllerIntegrationTest {
         List<HeroItem> heroItems = objectMapper.readValue(responseBody, new TypeReference<List<HeroItem>>() {});
 
         // Verify the response
-        assertThat(heroItems.size() == 1);
-        assertThat(heroItems.get(0).getItem().equals("item1"));
+        assertThat(heroItems).hasSize(1);
+        assertThat(heroItems.get(0).getItem()).isEqualTo("item1");
+        assertThat(heroItems.get(0).getTimestamp()).isEqualTo(530925L);
     }
 
     @Test
     void testGetHeroSpells() throws Exception {
-        // Create test match
+        // Create test match statistics
         Long matchId = 1L;
-        MatchEntity match = new MatchEntity();
-        match.setId(matchId);
-
-        // Create test combat log entries
-        CombatLogEntryEntity entry1 = new CombatLogEntryEntity();
-        entry1.setType(CombatLogEntryEntity.Type.SPELL_CAST);
-        entry1.setActor("hero1");
-        entry1.setAbility("spell1");
-        entry1.setTimestamp(new Date().getTime());
-
-        CombatLogEntryEntity entry2 = new CombatLogEntryEntity();
-        entry2.setType(CombatLogEntryEntity.Type.SPELL_CAST);
-        entry2.setActor("hero1");
-        entry2.setAbility("spell2");
-        entry1.setTimestamp(new Date().getTime());
-
-        CombatLogEntryEntity entry3 = new CombatLogEntryEntity();
-        entry3.setType(CombatLogEntryEntity.Type.SPELL_CAST);
-        entry3.setActor("hero1");
-        entry3.setAbility("spell1");
-        entry1.setTimestamp(new Date().getTime());
-
-        CombatLogEntryEntity entry4 = new CombatLogEntryEntity();
-        entry4.setType(CombatLogEntryEntity.Type.SPELL_CAST);
-        entry4.setActor("hero2");
-        entry4.setAbility("spell3");
-        entry1.setTimestamp(new Date().getTime());
-
-
-        match.setCombatLogEntries(Set.of(entry1, entry2, entry3, entry4));
-
-        // Save test match to repository
-        when(matchService.findById(matchId)).thenReturn(Optional.of(match));
+        List<HeroSpells> heroSpells = List.of(new HeroSpells("spell1", 2), new HeroSpells("spell2", 1));
+        when(matchService.getHeroSpells(matchId, "hero1", TimeRange.ALL)).thenReturn(Optional.of(heroSpells));
 
         // Send GET request to endpoint
         MvcResult mvcResult = mvc.perform(get("/api/match/1/hero1/spells")
@@ -204,41 +160,16 @@ class MatchControllerIntegrationTest {
                 .andReturn();
 
         // Verify response body
-        String expectedResponseBody = "[{\"spellName\":\"spell1\",\"castCount\":2},{\"spellName\":\"spell2\",\"castCount\":1},{\"spellName\":\"spell3\",\"castCount\":1}]";
-        assertThat(expectedResponseBody.equals(mvcResult.getResponse().getContentAsString()));
+        String expectedResponseBody = "[{\"spell\":\"spell1\",\"casts\":2},{\"spell\":\"spell2\",\"casts\":1}]";
+        assertThat(mvcResult.getResponse().getContentAsString()).isEqualTo(expectedResponseBody);
     }
 
     @Test
     void testGetHeroDamages() throws Exception {
-        // Create a match and some combat log entries
+        // Create some damage statistics
         Long matchId = 1L;
-        MatchEntity match = new MatchEntity();
-        match.setId(matchId);
-        Set<CombatLogEntryEntity> entries = new HashSet<>();
-
-        CombatLogEntryEntity entry1 = new CombatLogEntryEntity();
-        entry1.setType(CombatLogEntryEntity.Type.DAMAGE_DONE);
-        entry1.setDamage(100);
-        entry1.setActor("attacker1");
-        entry1.setTarget("hero1");
-        entries.add(entry1);
-
-        CombatLogEntryEntity entry2 = new CombatLogEntryEntity();
-        entry2.setType(CombatLogEntryEntity.Type.DAMAGE_DONE);
-        entry2.setDamage(200);
-        entry2.setActor("attacker2");
-        entry2.setTarget("hero1");
-        entries.add(entry2);
-
-        CombatLogEntryEntity entry3 = new CombatLogEntryEntity();
-        entry3.setType(CombatLogEntryEntity.Type.DAMAGE_DONE);
-        entry3.setDamage(300);
-        entry3.setActor("attacker1");
-        entry3.setTarget("hero1");
-        entries.add(entry3);
-        match.setCombatLogEntries(entries);
-
-        when(matchService.findById(matchId)).thenReturn(Optional.of(match));
+        List<HeroDamage> damages = List.of(new HeroDamage("target1", 2, 400), new HeroDamage("target2", 1, 200));
+        when(matchService.getHeroDamages(matchId, "hero1", TimeRange.ALL)).thenReturn(Optional.of(damages));
 
         // Perform the request
         MvcResult result = mvc.perform(get("/api/match/1/hero1/damage")
@@ -250,14 +181,340 @@ class MatchControllerIntegrationTest {
         List<HeroDamage> heroDamages = objectMapper.readValue(result.getResponse().getContentAsString(),
                 new TypeReference<List<HeroDamage>>() {});
         assertThat(heroDamages).hasSize(2);
-        assertThat(heroDamages.get(0).getTarget()).isEqualTo("attacker1");
+        assertThat(heroDamages.get(0).getTarget()).isEqualTo("target1");
         assertThat(heroDamages.get(0).getDamageInstances()).isEqualTo(2);
         assertThat(heroDamages.get(0).getTotalDamage()).isEqualTo(400);
-        assertThat(heroDamages.get(1).getTarget()).isEqualTo("attacker2");
+        assertThat(heroDamages.get(1).getTarget()).isEqualTo("target2");
         assertThat(heroDamages.get(1).getDamageInstances()).isEqualTo(1);
         assertThat(heroDamages.get(1).getTotalDamage()).isEqualTo(200);
     }
 
+    @Test
+    void getMatchNotFound() throws Exception {
+        when(matchService.getHeroKills(404L, TimeRange.ALL)).thenReturn(Optional.empty());
+        when(matchService.getHeroSpells(404L, "hero1", TimeRange.ALL)).thenReturn(Optional.empty());
+
+        mvc.perform(get("/api/match/404")).andExpect(status().isNotFound());
+        mvc.perform(get("/api/match/404/hero1/spells")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void cachesResponsesWithETags() throws Exception {
+        Long matchId = 777L;
+        List<HeroSpells> heroSpells = List.of(new HeroSpells("spell1", 2));
+        when(matchService.getHeroSpells(matchId, "hero1", TimeRange.ALL)).thenReturn(Optional.of(heroSpells));
+
+        MvcResult result = mvc.perform(get("/api/match/{matchId}/hero1/spells", matchId))
+                .andExpect(status().isOk())
+                .andReturn();
+        String etag = result.getResponse().getHeader("ETag");
+        assertThat(etag).startsWith("\"");
+
+        mvc.perform(get("/api/match/{matchId}/hero1/spells", matchId))
+                .andExpect(status().isOk())
+                .andExpect(content().string(result.getResponse().getContentAsString()));
+        mvc.perform(get("/api/match/{matchId}/hero1/spells", matchId).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        verify(matchService, times(1)).getHeroSpells(matchId, "hero1", TimeRange.ALL);
+
+        // deleting the match drops its cached responses
+        when(matchService.deleteMatch(matchId)).thenReturn(true);
+        when(matchService.getHeroSpells(matchId, "hero1", TimeRange.ALL)).thenReturn(Optional.empty());
+        mvc.perform(delete("/api/match/{matchId}", matchId)).andExpect(status().isNoContent());
+        mvc.perform(get("/api/match/{matchId}/hero1/spells", matchId)).andExpect(status().isNotFound());
+        mvc.perform(delete("/api/match/{matchId}", 404L)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void ingestBlankCombatLog() throws Exception {
+        mvc.perform(post("/api/match")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content("\n  \n"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void ingestCombatLogAsync() throws Exception {
+        String fileContent = IOUtils.resourceToString(COMBATLOG_FILE_1, StandardCharsets.UTF_8);
+        MvcResult result = mvc.perform(post("/api/match")
+                        .param("async", "true")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(fileContent))
+                .andExpect(status().isAccepted())
+                .andReturn();
+        IngestionJob job = objectMapper.readValue(result.getResponse().getContentAsString(), IngestionJob.class);
+        assertThat(result.getResponse().getHeader("Location")).isEqualTo("/api/match/jobs/" + job.getId());
+
+        // poll until the worker is done
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (job.getStatus() == IngestionJob.Status.QUEUED || job.getStatus() == IngestionJob.Status.RUNNING) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+            job = objectMapper.readValue(mvc.perform(get("/api/match/jobs/{jobId}", job.getId()))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString(), IngestionJob.class);
+        }
+        assertThat(job.getStatus()).isEqualTo(IngestionJob.Status.DONE);
+        assertThat(job.getMatchId()).isNotNull();
+
+        mvc.perform(get("/api/match/jobs/{jobId}", -1)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void deduplicatesRetriedUploads() throws Exception {
+        byte[] fileContent = IOUtils.resourceToByteArray(COMBATLOG_FILE_1);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(fileContent);
+        }
+        long matches = matchRepository.count();
+
+        assertThat(ingestMatch(COMBATLOG_FILE_1)).isEqualTo(matchIds.get(COMBATLOG_FILE_1));
+        String matchId = mvc.perform(post("/api/match")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                        .content(gzip.toByteArray()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(Long.parseLong(matchId)).isEqualTo(matchIds.get(COMBATLOG_FILE_1));
+        assertThat(matchRepository.count()).isEqualTo(matches);
+    }
+
+    @Test
+    public void refusesCombatLogsLargerThanTheLimitOnceDecoded() throws Exception {
+        // 4 MiB of blank lines, compressed to a few KiB
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(new byte[4 * 1024 * 1024]);
+        }
+        assertThat(gzip.size()).isLessThan(64 * 1024);
+        long matches = matchRepository.count();
+
+        for (String async : List.of("false", "true")) {
+            mvc.perform(post("/api/match")
+                            .param("async", async)
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                            .content(gzip.toByteArray()))
+                    .andExpect(status().isPayloadTooLarge());
+        }
+        assertThat(matchRepository.count()).isEqualTo(matches);
+    }
+
+    @Test
+    public void ingestsCompressedCombatLogs() throws Exception {
+        byte[] fileContent = IOUtils.resourceToByteArray(COMBATLOG_FILE_1);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(fileContent);
+        }
+        byte[] zstd = Zstd.compress(fileContent);
+        assertThat(gzip.size()).isLessThan(fileContent.length / 5);
+
+        List<HeroKills> expected = matchStore.getHeroKills(matchIds.get(COMBATLOG_FILE_1)).orElseThrow();
+        for (Map.Entry<String, byte[]> upload : Map.of("gzip", gzip.toByteArray(), "zstd", zstd).entrySet()) {
+            String matchId = mvc.perform(post("/api/match")
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .header(HttpHeaders.CONTENT_ENCODING, upload.getKey())
+                            .content(upload.getValue()))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            assertThat(matchStore.getHeroKills(Long.parseLong(matchId))).contains(expected);
+        }
+
+        mvc.perform(post("/api/match")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                        .content(fileContent))
+                .andExpect(status().isBadRequest());
+        mvc.perform(post("/api/match")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .header(HttpHeaders.CONTENT_ENCODING, "br")
+                        .content(fileContent))
+                .andExpect(status().isUnsupportedMediaType())
+                .andExpect(header().string(HttpHeaders.ACCEPT_ENCODING, "gzip, zstd"));
+    }
+
+    @Test
+    public void appendsToLiveMatches() throws Exception {
+        Long matchId = Long.parseLong(mvc.perform(post("/api/match/live"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+        assertThat(matchStore.getHeroKills(matchId)).contains(List.of());
+
+        mvc.perform(post("/api/match/{matchId}/append", matchId)
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content("[00:11:17.489] npc_dota_hero_snapfire is killed by npc_dota_hero_ma"))
+                .andExpect(status().isNoContent());
+        assertThat(matchStore.getHeroKills(matchId)).contains(List.of());
+        mvc.perform(post("/api/match/{matchId}/append", matchId)
+                        .param("complete", "true")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content("rs\n[00:12:17.489] npc_dota_hero_snapfire is killed by npc_dota_hero_mars"))
+                .andExpect(status().isNoContent());
+        assertThat(matchStore.getHeroKills(matchId))
+                .contains(List.of(new HeroKills("mars", 2), new HeroKills("snapfire", 0)));
+
+        mvc.perform(post("/api/match/{matchId}/append", -1)
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content("[00:11:17.489] npc_dota_hero_snapfire is killed by npc_dota_hero_mars\n"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void streamsLiveMatchUpdates() throws Exception {
+        Long matchId = Long.parseLong(mvc.perform(post("/api/match/live"))
+                .andReturn().getResponse().getContentAsString());
+        MvcResult stream = mvc.perform(get("/api/match/{matchId}/stream", matchId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(post("/api/match/{matchId}/append", matchId)
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content("[00:11:17.489] npc_dota_hero_snapfire is killed by npc_dota_hero_mars\n"
+                                + "[00:11:18.489] npc_dota_hero_mars buys item item_clarity\n"))
+                .andExpect(status().isNoContent());
+        mvc.perform(post("/api/match/{matchId}/append", matchId)
+                        .param("complete", "true")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(""))
+                .andExpect(status().isNoContent());
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!stream.getResponse().getContentAsString().contains("event:complete")) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+        String events = stream.getResponse().getContentAsString();
+        assertThat(events)
+                .contains("event:snapshot\ndata:{}")
+                .contains("event:delta\ndata:{\"kills\":{\"mars\":1},\"items\":{\"mars\":[{\"item\":\"clarity\"")
+                .contains("event:complete\ndata:" + matchId);
+
+        mvc.perform(get("/api/match/{matchId}/stream", -1)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void ingestsCombatLogsInBulk() throws Exception {
+        byte[] log1 = IOUtils.resourceToByteArray(COMBATLOG_FILE_1);
+        byte[] log2 = IOUtils.resourceToByteArray(COMBATLOG_FILE_2);
+
+        MvcResult result = mvc.perform(multipart("/api/match/bulk")
+                        .file(new MockMultipartFile("files", "match1.log", MediaType.TEXT_PLAIN_VALUE, log1))
+                        .file(new MockMultipartFile("files", "empty.log", MediaType.TEXT_PLAIN_VALUE, new byte[0]))
+                        .file(new MockMultipartFile("files", "match2.log", MediaType.TEXT_PLAIN_VALUE, log2)))
+                .andExpect(status().isOk())
+                .andReturn();
+        List<BulkIngestionResult> results = objectMapper.readValue(result.getResponse().getContentAsString(),
+                new TypeReference<>() {});
+        assertThat(results).extracting(BulkIngestionResult::getName)
+                .containsExactly("match1.log", "empty.log", "match2.log");
+        assertThat(results.get(1).getMatchId()).isNull();
+        assertThat(results.get(1).getError()).isEqualTo("Combat log is empty");
+        assertThat(matchStore.getHeroKills(results.get(0).getMatchId()))
+                .isEqualTo(matchStore.getHeroKills(matchIds.get(COMBATLOG_FILE_1)));
+        assertThat(matchStore.getHeroKills(results.get(2).getMatchId()))
+                .isEqualTo(matchStore.getHeroKills(matchIds.get(COMBATLOG_FILE_2)));
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            zip.putNextEntry(new ZipEntry("logs/"));
+            zip.putNextEntry(new ZipEntry("logs/match2.log"));
+            zip.write(log2);
+            // larger than dota.ingest.max-bytes once inflated
+            zip.putNextEntry(new ZipEntry("logs/blank.log"));
+            zip.write(new byte[4 * 1024 * 1024]);
+        }
+        result = mvc.perform(post("/api/match/bulk")
+                        .contentType("application/zip")
+                        .content(archive.toByteArray()))
+                .andExpect(status().isOk())
+                .andReturn();
+        results = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {});
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).getName()).isEqualTo("logs/match2.log");
+        assertThat(matchStore.getHeroKills(results.get(0).getMatchId()))
+                .isEqualTo(matchStore.getHeroKills(matchIds.get(COMBATLOG_FILE_2)));
+        assertThat(results.get(1)).isEqualTo(new BulkIngestionResult("logs/blank.log", null,
+                "Combat log exceeds the maximum size of 2097152 bytes"));
+    }
+
+    @Test
+    public void filtersByTimeRange() throws Exception {
+        TimeRange range = TimeRange.of(60_000L, 120_000L);
+        when(matchService.getHeroSpells(1L, "hero1", range))
+                .thenReturn(Optional.of(List.of(new HeroSpells("spell1", 1))));
+        when(matchService.getTimeline(1L, range)).thenReturn(Optional.of(List.of(new TimelineEvent(
+                61_000L, CombatLogEntryEntity.Type.SPELL_CAST, "hero1", null, "spell1", 1, null, null))));
+        when(matchService.getTimeline(404L, TimeRange.ALL)).thenReturn(Optional.empty());
+
+        mvc.perform(get("/api/match/1/hero1/spells").param("from", "60000").param("to", "120000"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"spell\":\"spell1\",\"casts\":1}]"));
+        mvc.perform(get("/api/match/1/timeline").param("from", "60000").param("to", "120000"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"timestamp\":61000,\"type\":\"SPELL_CAST\",\"actor\":\"hero1\","
+                        + "\"ability\":\"spell1\",\"ability_level\":1}]", true));
+        mvc.perform(get("/api/match/1/hero1/spells").param("from", "120000").param("to", "60000"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/api/match/404/timeline")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void servesMatchSummaries() throws Exception {
+        when(matchService.getSummary(1L, TimeRange.ALL)).thenReturn(Optional.of(List.of(new HeroSummary("hero1", 1,
+                List.of(new HeroItem("item1", 1_000L)), List.of(new HeroSpells("spell1", 2)),
+                List.of(new HeroDamage("hero2", 3, 300))))));
+        when(matchService.getSummary(404L, TimeRange.ALL)).thenReturn(Optional.empty());
+
+        String etag = mvc.perform(get("/api/match/1/summary"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"hero\":\"hero1\",\"kills\":1,"
+                        + "\"items\":[{\"item\":\"item1\",\"timestamp\":1000}],"
+                        + "\"spells\":[{\"spell\":\"spell1\",\"casts\":2}],"
+                        + "\"damage\":[{\"target\":\"hero2\",\"damage_instances\":3,\"total_damage\":300}]}]", true))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mvc.perform(get("/api/match/1/summary").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        mvc.perform(get("/api/match/404/summary")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void servesLeaderboards() throws Exception {
+        for (String board : List.of("kills", "spells", "damage")) {
+            MvcResult result = mvc.perform(get("/api/leaderboard/{board}", board).param("limit", "3"))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            List<LeaderboardEntry> entries =
+                    objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {});
+            assertThat(entries).hasSize(3)
+                    .isSortedAccordingTo(Comparator.comparing(LeaderboardEntry::getTotal).reversed())
+                    .allSatisfy(entry -> assertThat(entry.getTotal()).isPositive());
+        }
+        mvc.perform(get("/api/leaderboard/kills").param("limit", "0")).andExpect(status().isBadRequest());
+        mvc.perform(get("/api/leaderboard/kills").param("limit", "101")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void exposesPrometheusMetrics() throws Exception {
+        when(matchService.getHeroKills(1L, TimeRange.ALL)).thenReturn(Optional.of(List.of()));
+        mvc.perform(get("/api/match/{matchId}", 1L)).andExpect(status().isOk());
+
+        String scrape = mvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(scrape)
+                .contains("dota_ingest_lines_read_lines_total")
+                .contains("dota_ingest_lines_matched_lines_total{type=\"damage_done\",}")
+                .contains("dota_ingest_parse_seconds_count")
+                .contains("dota_ingest_batch_size_entries_count")
+                .contains("http_server_requests_seconds_bucket{exception=\"None\",method=\"GET\",outcome=\"SUCCESS\","
+                        + "status=\"200\",uri=\"/api/match/{matchId}\"")
+                .contains("cache_gets_total{cache=\"match-responses\"")
+                .contains("hibernate_statements_total");
+    }
+
     /**
      * Helper method that ingests a combat log file and returns the match id associated with all parsed events.
      *
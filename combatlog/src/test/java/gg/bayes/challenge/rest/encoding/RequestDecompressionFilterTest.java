@@ -0,0 +1,64 @@
+package gg.bayes.challenge.rest.encoding;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class RequestDecompressionFilterTest {
+
+    private final RequestDecompressionFilter filter = new RequestDecompressionFilter();
+
+    @Test
+    void readsCompressedBodiesBlockingOnly() throws Exception {
+        String body = "[00:00:01.000] npc_dota_hero_mars buys item item_tango";
+        ServletRequest decoded = filter(request("gzip", gzip(body)));
+
+        ServletInputStream in = decoded.getInputStream();
+        assertThat(in.isReady()).isTrue();
+        assertThatThrownBy(() -> in.setReadListener(mock(ReadListener.class)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(body);
+        assertThat(in.isFinished()).isTrue();
+    }
+
+    @Test
+    void passesTheRequestStreamThroughWithoutCodings() throws Exception {
+        MockHttpServletRequest request = request(" ", "plain".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(filter(request).getInputStream()).isSameAs(request.getInputStream());
+    }
+
+    private ServletRequest filter(MockHttpServletRequest request) throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        return chain.getRequest();
+    }
+
+    private static MockHttpServletRequest request(String encoding, byte[] body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/match");
+        request.addHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+        request.setContent(body);
+        return request;
+    }
+
+    private static byte[] gzip(String body) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
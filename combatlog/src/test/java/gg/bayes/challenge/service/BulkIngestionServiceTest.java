@@ -0,0 +1,163 @@
+package gg.bayes.challenge.service;
+
+import gg.bayes.challenge.config.IngestionProperties;
+import gg.bayes.challenge.config.SnapshotProperties;
+import gg.bayes.challenge.rest.model.BulkIngestionResult;
+import gg.bayes.challenge.service.parser.CombatLogLineParser;
+import gg.bayes.challenge.service.parser.NameDictionary;
+import gg.bayes.challenge.service.store.ColumnarMatchStore;
+import gg.bayes.challenge.service.store.CombatLogEventSource;
+import gg.bayes.challenge.service.store.MatchStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BulkIngestionServiceTest {
+    private static final String LINE = "[00:00:01.000] npc_dota_hero_mars buys item item_tango\n";
+    private static final String OTHER_LINE = "[00:00:02.000] npc_dota_hero_mars buys item item_branches\n";
+
+    private final MatchStore matchStore = Mockito.mock(MatchStore.class);
+    private final LeaderboardService leaderboardService = Mockito.mock(LeaderboardService.class);
+    private final AtomicLong matchIds = new AtomicLong();
+    private BulkIngestionService bulkIngestionService;
+
+    @AfterEach
+    void tearDown() {
+        bulkIngestionService.shutdown();
+    }
+
+    @Test
+    void storesLogsOneAtATimeWhenTheirGroupFails() throws Exception {
+        bulkIngestionService = new BulkIngestionService(matchStore, new CombatLogLineParser(new NameDictionary()),
+                new IngestionProperties(), leaderboardService, parserService(matchStore));
+        when(matchStore.saveAll(anyList(), anyList())).thenThrow(new IllegalStateException("Batch failed"));
+        when(matchStore.save(any(CombatLogEventSource.class), any())).thenAnswer(invocation -> {
+            CombatLogEventSource events = invocation.getArgument(0);
+            long[] count = new long[1];
+            events.forEach(event -> count[0]++);
+            if (count[0] > 1) {
+                throw new IllegalStateException("Too many events");
+            }
+            return matchIds.incrementAndGet();
+        });
+
+        List<BulkIngestionResult> results = bulkIngestionService.ingest(List.of(
+                upload("one.log", LINE), upload("two.log", LINE + LINE), upload("three.log", OTHER_LINE)));
+
+        assertThat(results).containsExactly(
+                new BulkIngestionResult("one.log", 1L, null),
+                new BulkIngestionResult("two.log", null, "Failed to store the combat log: Too many events"),
+                new BulkIngestionResult("three.log", 2L, null));
+    }
+
+    @Test
+    void storesEveryLogOnceWhenTheStoreFailsPartwayThroughAGroup(@TempDir Path directory) throws Exception {
+        SnapshotProperties snapshotProperties = new SnapshotProperties();
+        snapshotProperties.setDirectory(directory);
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(new NameDictionary(), snapshotProperties);
+        // the snapshot of the second match of the group can not be written
+        Files.createDirectory(directory.resolve("2.match.tmp"));
+        bulkIngestionService = new BulkIngestionService(columnarStore, new CombatLogLineParser(new NameDictionary()),
+                new IngestionProperties(), leaderboardService, parserService(columnarStore));
+
+        List<BulkIngestionResult> results = bulkIngestionService.ingest(List.of(
+                upload("one.log", LINE), upload("two.log", OTHER_LINE), upload("three.log", LINE + OTHER_LINE)));
+
+        assertThat(results).extracting(BulkIngestionResult::getError).containsOnlyNulls();
+        List<Long> stored = results.stream().map(BulkIngestionResult::getMatchId).collect(Collectors.toList());
+        assertThat(columnarStore.getMatchIds()).isEqualTo(stored);
+        assertThat(new ColumnarMatchStore(new NameDictionary(), snapshotProperties).getMatchIds()).isEqualTo(stored);
+        verify(leaderboardService, times(3)).record(any());
+    }
+
+    @Test
+    void streamsLogsLargerThanTheGroupBudget() throws Exception {
+        IngestionProperties properties = new IngestionProperties();
+        properties.setBulkGroupBytes(LINE.length());
+        properties.setMaxBytes(3L * LINE.length());
+        bulkIngestionService = new BulkIngestionService(matchStore, new CombatLogLineParser(new NameDictionary()),
+                properties, leaderboardService, parserService(matchStore));
+        when(matchStore.saveAll(anyList(), anyList())).thenAnswer(invocation -> List.of(matchIds.incrementAndGet()));
+        when(matchStore.save(any(CombatLogEventSource.class), any())).thenAnswer(invocation -> {
+            CombatLogEventSource events = invocation.getArgument(0);
+            events.forEach(event -> { });
+            return matchIds.incrementAndGet();
+        });
+
+        List<BulkIngestionResult> results = bulkIngestionService.ingest(List.of(
+                upload("small.log", LINE), upload("large.log", LINE + LINE), upload("huge.log", LINE.repeat(4))));
+
+        assertThat(results).containsExactly(
+                new BulkIngestionResult("small.log", 1L, null),
+                new BulkIngestionResult("large.log", 2L, null),
+                new BulkIngestionResult("huge.log", null,
+                        "Combat log exceeds the maximum size of " + 3 * LINE.length() + " bytes"));
+    }
+
+    @Test
+    void returnsTheStoredMatchesWhenABulkUploadIsRetried() throws Exception {
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(new NameDictionary());
+        CombatLogParserService parserService = parserService(columnarStore);
+        bulkIngestionService = new BulkIngestionService(columnarStore, new CombatLogLineParser(new NameDictionary()),
+                new IngestionProperties(), leaderboardService, parserService);
+        List<BulkIngestionService.Upload> uploads = List.of(
+                upload("one.log", LINE), upload("two.log", OTHER_LINE), upload("copy.log", LINE));
+
+        List<BulkIngestionResult> results = bulkIngestionService.ingest(uploads);
+        List<Long> stored = columnarStore.getMatchIds();
+
+        assertThat(stored).hasSize(2);
+        assertThat(results).extracting(BulkIngestionResult::getMatchId)
+                .containsExactly(stored.get(0), stored.get(1), stored.get(0));
+        assertThat(bulkIngestionService.ingest(uploads)).isEqualTo(results);
+        assertThat(bulkIngestionService.ingestZip(new ByteArrayInputStream(zip(uploads)))).isEqualTo(results);
+        assertThat(parserService.ingest(new ByteArrayInputStream(LINE.getBytes(StandardCharsets.UTF_8))))
+                .isEqualTo(stored.get(0));
+        assertThat(columnarStore.getMatchIds()).isEqualTo(stored);
+        verify(leaderboardService, times(2)).record(any());
+    }
+
+    private CombatLogParserService parserService(MatchStore store) {
+        return new CombatLogParserService(store, new CombatLogLineParser(new NameDictionary()),
+                new IngestionProperties(), new SimpleMeterRegistry(), leaderboardService);
+    }
+
+    private static byte[] zip(List<BulkIngestionService.Upload> uploads) throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            for (BulkIngestionService.Upload upload : uploads) {
+                zip.putNextEntry(new ZipEntry(upload.getName()));
+                upload.getContent().getInputStream().transferTo(zip);
+                zip.closeEntry();
+            }
+        }
+        return archive.toByteArray();
+    }
+
+    private static BulkIngestionService.Upload upload(String name, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return new BulkIngestionService.Upload(name, new ByteArrayResource(bytes), bytes.length);
+    }
+}
@@ -0,0 +1,707 @@
+package gg.bayes.challenge.service;
+
+import gg.bayes.challenge.config.IngestionProperties;
+import gg.bayes.challenge.config.SnapshotProperties;
+import gg.bayes.challenge.config.StreamProperties;
+import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
+import gg.bayes.challenge.persistence.repository.CombatLogEntryRepository;
+import gg.bayes.challenge.persistence.repository.MatchRepository;
+import gg.bayes.challenge.rest.model.HeroDamage;
+import gg.bayes.challenge.rest.model.HeroItem;
+import gg.bayes.challenge.rest.model.HeroKills;
+import gg.bayes.challenge.rest.model.HeroSpells;
+import gg.bayes.challenge.rest.model.HeroSummary;
+import gg.bayes.challenge.rest.model.LeaderboardEntry;
+import gg.bayes.challenge.rest.model.TimelineEvent;
+import gg.bayes.challenge.service.parser.CombatLogEvent;
+import gg.bayes.challenge.service.parser.CombatLogLineParser;
+import gg.bayes.challenge.service.parser.NameDictionary;
+import gg.bayes.challenge.service.store.ColumnarMatchStore;
+import gg.bayes.challenge.service.store.CombatLogEventSource;
+import gg.bayes.challenge.service.store.MatchStore;
+import gg.bayes.challenge.service.store.TimeRange;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.IOUtils;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest
+class CombatLogParserServiceTest {
+
+    private static final String COMBATLOG_FILE_1 = "/data/combatlog_1.log.txt";
+    private static final String COMBATLOG_FILE_2 = "/data/combatlog_2.log.txt";
+
+    @Autowired
+    private CombatLogParserService combatLogParserService;
+
+    @Autowired
+    private CombatLogEntryRepository combatLogEntryRepository;
+
+    @Autowired
+    private MatchService matchService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private LiveIngestionService liveIngestionService;
+
+    @Autowired
+    private MatchRepository matchRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private IngestionProperties ingestionProperties;
+
+    @Test
+    void insertsEntriesInJdbcBatches() throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        byte[] combatLog = IOUtils.resourceToByteArray(COMBATLOG_FILE_1);
+        long rowsBefore = combatLogEntryRepository.count();
+
+        DistributionSummary batchSizes = meterRegistry.get("dota.ingest.batch.size").summary();
+        long batchesBefore = batchSizes.count();
+
+        statistics.clear();
+        combatLogParserService.parseAndSave(new ByteArrayInputStream(combatLog));
+
+        long rows = combatLogEntryRepository.count() - rowsBefore;
+        assertThat(rows).isGreaterThan(3000);
+        // one statement per batch plus the match insert and a handful of sequence calls, not one per row
+        assertThat(statistics.getPrepareStatementCount()).isLessThan(rows / 100);
+        // empty batches are neither flushed nor recorded
+        int batchSize = ingestionProperties.getBatchSize();
+        assertThat(batchSizes.count() - batchesBefore).isEqualTo((rows + batchSize - 1) / batchSize);
+    }
+
+    @Test
+    void storesPerHeroRollups() throws Exception {
+        String combatLog = IOUtils.resourceToString(COMBATLOG_FILE_1, StandardCharsets.UTF_8);
+        Long matchId = combatLogParserService.parseAndSave(new ByteArrayInputStream(combatLog.getBytes(StandardCharsets.UTF_8)));
+
+        // recount the events straight from the log
+        CombatLogLineParser parser = new CombatLogLineParser(new NameDictionary());
+        CombatLogEvent event = new CombatLogEvent();
+        Map<String, Integer> kills = new HashMap<>();
+        Map<String, Integer> casts = new HashMap<>();
+        Map<String, Integer> damageDealt = new HashMap<>();
+        Map<String, Integer> damageInstances = new HashMap<>();
+        for (String line : combatLog.split("\\r?\\n")) {
+            if (!parser.parse(line, event)) {
+                continue;
+            }
+            if (event.getType() == CombatLogEntryEntity.Type.HERO_KILLED) {
+                kills.merge(event.getActor(), 1, Integer::sum);
+            } else if (event.getType() == CombatLogEntryEntity.Type.SPELL_CAST && event.getActor().equals("mars")) {
+                casts.merge(event.getAbility(), 1, Integer::sum);
+            } else if (event.getType() == CombatLogEntryEntity.Type.DAMAGE_DONE && event.getActor().equals("mars")) {
+                damageDealt.merge(event.getTarget(), event.getDamage(), Integer::sum);
+                damageInstances.merge(event.getTarget(), 1, Integer::sum);
+            }
+        }
+
+        List<HeroKills> heroKills = matchService.getHeroKills(matchId).orElseThrow();
+        assertThat(heroKills).hasSize(10);
+        heroKills.forEach(k -> assertThat(k.getKills()).isEqualTo(kills.getOrDefault(k.getHero(), 0)));
+
+        List<HeroSpells> heroSpells = matchService.getHeroSpells(matchId, "mars").orElseThrow();
+        assertThat(heroSpells).hasSize(casts.size());
+        heroSpells.forEach(s -> assertThat(s.getCasts()).isEqualTo(casts.get(s.getSpell())));
+
+        List<HeroDamage> heroDamages = matchService.getHeroDamages(matchId, "mars").orElseThrow();
+        assertThat(heroDamages).hasSize(damageDealt.size());
+        heroDamages.forEach(d -> {
+            assertThat(d.getTotalDamage()).isEqualTo(damageDealt.get(d.getTarget()));
+            assertThat(d.getDamageInstances()).isEqualTo(damageInstances.get(d.getTarget()));
+        });
+
+        assertThat(matchService.getHeroKills(-1L)).isEmpty();
+    }
+
+    @Test
+    void aggregateQueriesMatchRollups() throws Exception {
+        Long matchId = combatLogParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_2));
+
+        assertThat(combatLogEntryRepository.countKills(matchId))
+                .containsExactlyElementsOf(matchService.getHeroKills(matchId).orElseThrow());
+        for (String hero : List.of("centaur", "lycan", "gyrocopter")) {
+            assertThat(combatLogEntryRepository.countSpellCasts(matchId, hero))
+                    .containsExactlyElementsOf(matchService.getHeroSpells(matchId, hero).orElseThrow());
+            assertThat(combatLogEntryRepository.sumDamageDealt(matchId, hero))
+                    .containsExactlyElementsOf(matchService.getHeroDamages(matchId, hero).orElseThrow());
+        }
+
+        List<HeroItem> items = matchService.getHeroItems(matchId, "centaur").orElseThrow();
+        assertThat(items).isNotEmpty().isSortedAccordingTo(Comparator.comparing(HeroItem::getTimestamp));
+    }
+
+    @Test
+    void listsHeroesThatOnlyTookDamageOrDied() throws Exception {
+        String combatLog = String.join("\n",
+                "[00:10:42.031] npc_dota_hero_bane hits npc_dota_hero_abyssal_underlord with dota_unknown for 51 damage "
+                        + "(740->689)",
+                "[00:11:17.489] npc_dota_hero_snapfire is killed by npc_dota_hero_mars",
+                "[00:12:00.000] npc_dota_hero_bane buys item item_tango");
+        NameDictionary names = new NameDictionary();
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(names);
+        CombatLogParserService columnarParserService = new CombatLogParserService(
+                columnarStore, new CombatLogLineParser(names), new IngestionProperties(),
+                new SimpleMeterRegistry(), leaderboards(columnarStore));
+        Long matchId = combatLogParserService.parseAndSave(
+                new ByteArrayInputStream(combatLog.getBytes(StandardCharsets.UTF_8)));
+        Long columnarMatchId = columnarParserService.parseAndSave(
+                new ByteArrayInputStream(combatLog.getBytes(StandardCharsets.UTF_8)));
+
+        List<HeroKills> expected = List.of(new HeroKills("mars", 1), new HeroKills("abyssal_underlord", 0),
+                new HeroKills("bane", 0), new HeroKills("snapfire", 0));
+        assertThat(matchService.getHeroKills(matchId)).contains(expected);
+        assertThat(combatLogEntryRepository.countKills(matchId)).isEqualTo(expected);
+        assertThat(matchService.getHeroKills(matchId, TimeRange.of(0L, 60 * 60_000L))).contains(expected);
+        assertThat(columnarStore.getHeroKills(columnarMatchId)).contains(expected);
+        assertThat(matchService.getSummary(matchId, TimeRange.ALL).orElseThrow())
+                .extracting(hero -> new HeroKills(hero.getHero(), hero.getKills())).isEqualTo(expected);
+
+        assertThat(matchService.getHeroKills(matchId, TimeRange.of(11 * 60_000L, 12 * 60_000L)))
+                .contains(List.of(new HeroKills("mars", 1), new HeroKills("snapfire", 0)));
+    }
+
+    @Test
+    void columnarStoreMatchesJpaStore() throws Exception {
+        NameDictionary names = new NameDictionary();
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(names);
+        CombatLogParserService columnarParserService = new CombatLogParserService(
+                columnarStore, new CombatLogLineParser(names), new IngestionProperties(),
+                new SimpleMeterRegistry(), leaderboards(columnarStore));
+        for (String file : List.of(COMBATLOG_FILE_1, COMBATLOG_FILE_2)) {
+            Long jpaMatchId = combatLogParserService.parseAndSave(getClass().getResourceAsStream(file));
+            Long columnarMatchId = columnarParserService.parseAndSave(getClass().getResourceAsStream(file));
+
+            List<HeroKills> heroKills = matchService.getHeroKills(jpaMatchId).orElseThrow();
+            assertThat(columnarStore.getHeroKills(columnarMatchId)).contains(heroKills);
+            for (HeroKills hero : heroKills) {
+                String heroName = hero.getHero();
+                assertThat(columnarStore.getHeroItems(columnarMatchId, heroName))
+                        .contains(matchService.getHeroItems(jpaMatchId, heroName).orElseThrow());
+                assertThat(columnarStore.getHeroSpells(columnarMatchId, heroName))
+                        .contains(matchService.getHeroSpells(jpaMatchId, heroName).orElseThrow());
+                assertThat(columnarStore.getHeroDamages(columnarMatchId, heroName))
+                        .contains(matchService.getHeroDamages(jpaMatchId, heroName).orElseThrow());
+            }
+        }
+        assertThat(columnarStore.getHeroKills(-1L)).isEmpty();
+        assertThat(columnarStore.getHeroItems(1L, "unknown")).contains(List.of());
+    }
+
+    @Test
+    void keepsAbilityLevelsAboveAByte(@TempDir Path directory) throws Exception {
+        byte[] combatLog = ("[00:10:55.928] npc_dota_hero_bane casts ability bane_brain_sap (lvl 200) on "
+                + "npc_dota_hero_puck\n").getBytes(StandardCharsets.UTF_8);
+        SnapshotProperties snapshotProperties = new SnapshotProperties();
+        snapshotProperties.setDirectory(directory);
+        NameDictionary names = new NameDictionary();
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(names, snapshotProperties);
+        Long columnarMatchId = new CombatLogParserService(columnarStore, new CombatLogLineParser(names),
+                new IngestionProperties(), new SimpleMeterRegistry(), leaderboards(columnarStore))
+                .parseAndSave(new ByteArrayInputStream(combatLog));
+        Long jpaMatchId = combatLogParserService.parseAndSave(new ByteArrayInputStream(combatLog));
+
+        List<TimelineEvent> timeline = matchService.getTimeline(jpaMatchId, TimeRange.ALL).orElseThrow();
+        assertThat(timeline).singleElement().extracting(TimelineEvent::getAbilityLevel).isEqualTo(200);
+        assertThat(columnarStore.getTimeline(columnarMatchId, TimeRange.ALL)).contains(timeline);
+        assertThat(new ColumnarMatchStore(new NameDictionary(), snapshotProperties)
+                .getTimeline(columnarMatchId, TimeRange.ALL)).contains(timeline);
+    }
+
+    @Test
+    void filtersByTimeRange() throws Exception {
+        NameDictionary names = new NameDictionary();
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(names);
+        CombatLogParserService columnarParserService = new CombatLogParserService(
+                columnarStore, new CombatLogLineParser(names), new IngestionProperties(),
+                new SimpleMeterRegistry(), leaderboards(columnarStore));
+        Long jpaMatchId = combatLogParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_1));
+        Long columnarMatchId = columnarParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_1));
+
+        TimeRange range = TimeRange.of(10 * 60_000L, 20 * 60_000L);
+        List<TimelineEvent> timeline = matchService.getTimeline(jpaMatchId, range).orElseThrow();
+        assertThat(timeline).isNotEmpty()
+                .allSatisfy(event -> assertThat(event.getTimestamp()).isBetween(range.getFrom(), range.getTo() - 1))
+                .isSortedAccordingTo(Comparator.comparing(TimelineEvent::getTimestamp));
+        assertThat(columnarStore.getTimeline(columnarMatchId, range)).contains(timeline);
+        assertThat(columnarStore.getTimeline(columnarMatchId, TimeRange.ALL))
+                .contains(matchService.getTimeline(jpaMatchId, TimeRange.ALL).orElseThrow());
+
+        List<HeroKills> heroKills = matchService.getHeroKills(jpaMatchId, range).orElseThrow();
+        assertThat(heroKills).isNotEmpty();
+        assertThat(heroKills.stream().mapToInt(HeroKills::getKills).sum()).isEqualTo(timeline.stream()
+                .filter(event -> event.getType() == CombatLogEntryEntity.Type.HERO_KILLED).count());
+        assertThat(columnarStore.getHeroKills(columnarMatchId, range)).contains(heroKills);
+        for (HeroKills hero : matchService.getHeroKills(jpaMatchId).orElseThrow()) {
+            String heroName = hero.getHero();
+            assertThat(columnarStore.getHeroItems(columnarMatchId, heroName, range))
+                    .contains(matchService.getHeroItems(jpaMatchId, heroName, range).orElseThrow());
+            assertThat(columnarStore.getHeroSpells(columnarMatchId, heroName, range))
+                    .contains(matchService.getHeroSpells(jpaMatchId, heroName, range).orElseThrow());
+            assertThat(columnarStore.getHeroDamages(columnarMatchId, heroName, range))
+                    .contains(matchService.getHeroDamages(jpaMatchId, heroName, range).orElseThrow());
+        }
+    }
+
+    @Test
+    void summarizesMatchesInOnePass() throws Exception {
+        NameDictionary names = new NameDictionary();
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(names);
+        CombatLogParserService columnarParserService = new CombatLogParserService(
+                columnarStore, new CombatLogLineParser(names), new IngestionProperties(),
+                new SimpleMeterRegistry(), leaderboards(columnarStore));
+        Long jpaMatchId = combatLogParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_1));
+        Long columnarMatchId = columnarParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_1));
+
+        for (TimeRange range : List.of(TimeRange.ALL, TimeRange.of(10 * 60_000L, 20 * 60_000L))) {
+            List<HeroSummary> summary = matchService.getSummary(jpaMatchId, range).orElseThrow();
+            assertThat(summary).extracting(hero -> new HeroKills(hero.getHero(), hero.getKills()))
+                    .isEqualTo(matchService.getHeroKills(jpaMatchId, range).orElseThrow());
+            for (HeroSummary hero : summary) {
+                String heroName = hero.getHero();
+                assertThat(hero.getItems()).isEqualTo(matchService.getHeroItems(jpaMatchId, heroName, range).orElseThrow());
+                assertThat(hero.getSpells())
+                        .isEqualTo(matchService.getHeroSpells(jpaMatchId, heroName, range).orElseThrow());
+                assertThat(hero.getDamage())
+                        .isEqualTo(matchService.getHeroDamages(jpaMatchId, heroName, range).orElseThrow());
+            }
+            assertThat(columnarStore.getSummary(columnarMatchId, range)).contains(summary);
+        }
+        assertThat(matchService.getSummary(-1L, TimeRange.ALL)).isEmpty();
+        assertThat(columnarStore.getSummary(-1L, TimeRange.ALL)).isEmpty();
+    }
+
+    @Test
+    void restoresColumnarMatchesFromSnapshots(@TempDir Path directory) throws Exception {
+        SnapshotProperties snapshotProperties = new SnapshotProperties();
+        snapshotProperties.setDirectory(directory);
+        NameDictionary names = new NameDictionary();
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(names, snapshotProperties);
+        CombatLogParserService columnarParserService = new CombatLogParserService(
+                columnarStore, new CombatLogLineParser(names), new IngestionProperties(),
+                new SimpleMeterRegistry(), leaderboards(columnarStore));
+        Long first = columnarParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_1));
+        Long second = columnarParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_2));
+        Long deleted = columnarParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_2));
+        assertThat(columnarStore.delete(deleted)).isTrue();
+        byte[] log = IOUtils.toByteArray(getClass().getResourceAsStream(COMBATLOG_FILE_1));
+        int half = log.length / 2;
+        while (log[half - 1] != '\n') {
+            half++;
+        }
+        Long live = columnarParserService.parseAndSave(new ByteArrayInputStream(log, 0, half));
+        CombatLogLineParser lineParser = new CombatLogLineParser(names);
+        String rest = new String(log, half, log.length - half, StandardCharsets.UTF_8);
+        assertThat(columnarStore.append(live, consumer -> {
+            CombatLogEvent event = new CombatLogEvent();
+            for (String line : rest.split("\n")) {
+                if (lineParser.parse(line, event)) {
+                    consumer.accept(event);
+                }
+            }
+        })).isTrue();
+
+        NameDictionary restartedNames = new NameDictionary();
+        ColumnarMatchStore restarted = new ColumnarMatchStore(restartedNames, snapshotProperties);
+        assertThat(restartedNames.size()).isEqualTo(names.size());
+        assertThat(restarted.getHeroKills(deleted)).isEmpty();
+        for (Long matchId : List.of(first, second, live)) {
+            assertThat(restarted.getTimeline(matchId, TimeRange.ALL))
+                    .isNotEmpty()
+                    .isEqualTo(columnarStore.getTimeline(matchId, TimeRange.ALL));
+            for (HeroKills hero : columnarStore.getHeroKills(matchId).orElseThrow()) {
+                assertThat(restarted.getHeroDamages(matchId, hero.getHero()))
+                        .isEqualTo(columnarStore.getHeroDamages(matchId, hero.getHero()));
+            }
+        }
+        assertThat(restarted.getTimeline(live, TimeRange.ALL)).isEqualTo(restarted.getTimeline(first, TimeRange.ALL));
+        assertThat(new ColumnarMatchStore(new NameDictionary(), snapshotProperties).save(consumer -> { }))
+                .isGreaterThan(live);
+    }
+
+    @Test
+    void appendsToColumnarSnapshotsInPlace(@TempDir Path directory) throws Exception {
+        SnapshotProperties snapshotProperties = new SnapshotProperties();
+        snapshotProperties.setDirectory(directory);
+        NameDictionary names = new NameDictionary();
+        CombatLogLineParser lineParser = new CombatLogLineParser(names);
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(names, snapshotProperties);
+        List<String> lines = IOUtils.readLines(
+                getClass().getResourceAsStream(COMBATLOG_FILE_1), StandardCharsets.UTF_8);
+        long matchId = columnarStore.save(consumer -> { });
+        Path snapshot = directory.resolve(matchId + ".match");
+        Object snapshotFile = Files.readAttributes(snapshot, BasicFileAttributes.class).fileKey();
+        for (int from = 0; from < lines.size(); from += 100) {
+            List<String> segment = lines.subList(from, Math.min(from + 100, lines.size()));
+            assertThat(columnarStore.append(matchId, events(lineParser, segment))).isTrue();
+        }
+
+        // appended to, not rewritten
+        assertThat(Files.readAttributes(snapshot, BasicFileAttributes.class).fileKey()).isEqualTo(snapshotFile);
+        long expectedId = columnarStore.save(events(lineParser, lines));
+        List<TimelineEvent> timeline = columnarStore.getTimeline(expectedId, TimeRange.ALL).orElseThrow();
+        assertThat(columnarStore.getTimeline(matchId, TimeRange.ALL)).contains(timeline);
+        assertThat(new ColumnarMatchStore(new NameDictionary(), snapshotProperties).getTimeline(matchId, TimeRange.ALL))
+                .contains(timeline);
+
+        // a segment going back in time is sorted in
+        String earliest = lines.stream().filter(line -> lineParser.parse(line, new CombatLogEvent())).findFirst()
+                .orElseThrow();
+        assertThat(columnarStore.append(matchId, events(lineParser, List.of(earliest)))).isTrue();
+        List<TimelineEvent> sorted = columnarStore.getTimeline(matchId, TimeRange.ALL).orElseThrow();
+        assertThat(sorted).hasSize(timeline.size() + 1)
+                .isSortedAccordingTo(Comparator.comparing(TimelineEvent::getTimestamp));
+        assertThat(new ColumnarMatchStore(new NameDictionary(), snapshotProperties).getTimeline(matchId, TimeRange.ALL))
+                .contains(sorted);
+    }
+
+    @Test
+    void neverReusesTheIdOfADeletedMatchAfterARestart(@TempDir Path directory) throws Exception {
+        SnapshotProperties snapshotProperties = new SnapshotProperties();
+        snapshotProperties.setDirectory(directory);
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(new NameDictionary(), snapshotProperties);
+        columnarStore.save(consumer -> { });
+        long newest = columnarStore.save(consumer -> { });
+        assertThat(columnarStore.delete(newest)).isTrue();
+
+        ColumnarMatchStore restarted = new ColumnarMatchStore(new NameDictionary(), snapshotProperties);
+        long next = restarted.save(consumer -> { });
+        assertThat(next).isGreaterThan(newest);
+        assertThat(restarted.delete(next)).isTrue();
+        assertThat(new ColumnarMatchStore(new NameDictionary(), snapshotProperties).save(consumer -> { }))
+                .isGreaterThan(next);
+    }
+
+    @Test
+    void maintainsLeaderboards() throws Exception {
+        NameDictionary names = new NameDictionary();
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(names);
+        LeaderboardService leaderboards = leaderboards(columnarStore);
+        CombatLogParserService columnarParserService = new CombatLogParserService(
+                columnarStore, new CombatLogLineParser(names), new IngestionProperties(),
+                new SimpleMeterRegistry(), leaderboards);
+        Long first = columnarParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_1));
+        Long second = columnarParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_1));
+
+        List<HeroKills> heroKills = columnarStore.getHeroKills(first).orElseThrow();
+        List<LeaderboardEntry> expectedKills = new ArrayList<>();
+        Map<String, Long> spellCasts = new HashMap<>();
+        Map<String, Long> damageDealt = new HashMap<>();
+        for (HeroKills hero : heroKills) {
+            if (hero.getKills() > 0) {
+                expectedKills.add(new LeaderboardEntry(hero.getHero(), 2L * hero.getKills()));
+            }
+            columnarStore.getHeroSpells(first, hero.getHero()).orElseThrow()
+                    .forEach(spell -> spellCasts.merge(spell.getSpell(), 2L * spell.getCasts(), Long::sum));
+            columnarStore.getHeroDamages(first, hero.getHero()).orElseThrow()
+                    .forEach(dealt -> damageDealt.merge(hero.getHero(), 2L * dealt.getTotalDamage(), Long::sum));
+        }
+        assertThat(leaderboards.top(LeaderboardService.Board.KILLS, 100)).isEqualTo(expectedKills);
+        assertThat(leaderboards.top(LeaderboardService.Board.KILLS, 3)).isEqualTo(expectedKills.subList(0, 3));
+        List<LeaderboardEntry> spells = leaderboards.top(LeaderboardService.Board.SPELLS, 5);
+        assertThat(spells).hasSize(5)
+                .isSortedAccordingTo(Comparator.comparing(LeaderboardEntry::getTotal).reversed())
+                .allSatisfy(spell -> assertThat(spell.getTotal()).isEqualTo(spellCasts.get(spell.getName())));
+        assertThat(spells.get(0).getTotal()).isEqualTo(Collections.max(spellCasts.values()));
+        assertThat(leaderboards.top(LeaderboardService.Board.DAMAGE, 100)).hasSize(damageDealt.size())
+                .allSatisfy(hero -> assertThat(hero.getTotal()).isEqualTo(damageDealt.get(hero.getName())));
+
+        MatchService matchService = new MatchService(columnarStore, liveIngestion(columnarStore, names, leaderboards));
+        assertThat(matchService.deleteMatch(second)).isTrue();
+        LeaderboardEntry top = new LeaderboardEntry(expectedKills.get(0).getName(), expectedKills.get(0).getTotal() / 2);
+        assertThat(leaderboards.top(LeaderboardService.Board.KILLS, 1)).singleElement().isEqualTo(top);
+        // a match deleted twice is only subtracted once
+        assertThat(matchService.deleteMatch(second)).isFalse();
+        assertThat(leaderboards.top(LeaderboardService.Board.KILLS, 1)).singleElement().isEqualTo(top);
+    }
+
+    @Test
+    void rebuildsLeaderboardsFromRestoredMatches(@TempDir Path directory) throws Exception {
+        SnapshotProperties snapshotProperties = new SnapshotProperties();
+        snapshotProperties.setDirectory(directory);
+        NameDictionary names = new NameDictionary();
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(names, snapshotProperties);
+        LeaderboardService leaderboards = leaderboards(columnarStore);
+        CombatLogParserService columnarParserService = new CombatLogParserService(
+                columnarStore, new CombatLogLineParser(names), new IngestionProperties(),
+                new SimpleMeterRegistry(), leaderboards);
+        Long first = columnarParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_1));
+        Long second = columnarParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_2));
+
+        NameDictionary restartedNames = new NameDictionary();
+        ColumnarMatchStore restartedStore = new ColumnarMatchStore(restartedNames, snapshotProperties);
+        LeaderboardService restarted = leaderboards(restartedStore);
+        restarted.load();
+        for (LeaderboardService.Board board : LeaderboardService.Board.values()) {
+            assertThat(restarted.top(board, 100)).isNotEmpty().isEqualTo(leaderboards.top(board, 100));
+        }
+
+        // deleting the restored matches takes the counters back to zero, not below
+        MatchService matchService = new MatchService(
+                restartedStore, liveIngestion(restartedStore, restartedNames, restarted));
+        assertThat(matchService.deleteMatch(first)).isTrue();
+        assertThat(matchService.deleteMatch(second)).isTrue();
+        for (LeaderboardService.Board board : LeaderboardService.Board.values()) {
+            assertThat(restarted.top(board, 100)).isEmpty();
+        }
+        LeaderboardService fresh = leaderboards(columnarStore);
+        new CombatLogParserService(restartedStore, new CombatLogLineParser(restartedNames), new IngestionProperties(),
+                new SimpleMeterRegistry(), restarted).parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_1));
+        new CombatLogParserService(columnarStore, new CombatLogLineParser(names), new IngestionProperties(),
+                new SimpleMeterRegistry(), fresh).parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_1));
+        for (LeaderboardService.Board board : LeaderboardService.Board.values()) {
+            assertThat(restarted.top(board, 100)).isEqualTo(fresh.top(board, 100));
+        }
+    }
+
+    @Test
+    void startsLeaderboardsFromTheTotalsStoredOnShutdown(@TempDir Path directory) throws Exception {
+        SnapshotProperties snapshotProperties = new SnapshotProperties();
+        snapshotProperties.setDirectory(directory);
+        NameDictionary names = new NameDictionary();
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(names, snapshotProperties);
+        LeaderboardService leaderboards = new LeaderboardService(columnarStore, snapshotProperties);
+        leaderboards.load();
+        CombatLogParserService columnarParserService = new CombatLogParserService(
+                columnarStore, new CombatLogLineParser(names), new IngestionProperties(),
+                new SimpleMeterRegistry(), leaderboards);
+        columnarParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_1));
+        Long second = columnarParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_2));
+        leaderboards.close();
+
+        ColumnarMatchStore restartedStore = spy(new ColumnarMatchStore(new NameDictionary(), snapshotProperties));
+        LeaderboardService restarted = new LeaderboardService(restartedStore, snapshotProperties);
+        restarted.load();
+        verify(restartedStore, never()).getSummary(anyLong(), any());
+        for (LeaderboardService.Board board : LeaderboardService.Board.values()) {
+            assertThat(restarted.top(board, 100)).isNotEmpty().isEqualTo(leaderboards.top(board, 100));
+        }
+        // read once, so a crash before the next shutdown leads to a rebuild
+        assertThat(directory.resolve("leaderboards")).doesNotExist();
+
+        // totals stored for other matches are rebuilt
+        restarted.close();
+        assertThat(restartedStore.delete(second)).isTrue();
+        ColumnarMatchStore changedStore = new ColumnarMatchStore(new NameDictionary(), snapshotProperties);
+        LeaderboardService rebuilt = new LeaderboardService(changedStore, snapshotProperties);
+        rebuilt.load();
+        LeaderboardService expected = leaderboards(changedStore);
+        expected.load();
+        for (LeaderboardService.Board board : LeaderboardService.Board.values()) {
+            assertThat(rebuilt.top(board, 100)).isNotEmpty().isEqualTo(expected.top(board, 100));
+        }
+    }
+
+    @Test
+    void coalescesDuplicateUploads() throws Exception {
+        // unique content, the trailing line is skipped by the parser
+        byte[] combatLog = (IOUtils.resourceToString(COMBATLOG_FILE_2, StandardCharsets.UTF_8)
+                + "\n[00:00:00.000] upload " + System.nanoTime() + "\n").getBytes(StandardCharsets.UTF_8);
+        long matches = matchRepository.count();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Long>> uploads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                uploads.add(executor.submit(() -> {
+                    start.await();
+                    return combatLogParserService.ingest(new ByteArrayInputStream(combatLog));
+                }));
+            }
+            start.countDown();
+            Long matchId = uploads.get(0).get();
+            for (Future<Long> upload : uploads) {
+                assertThat(upload.get()).isEqualTo(matchId);
+            }
+            assertThat(matchRepository.count()).isEqualTo(matches + 1);
+            assertThat(combatLogParserService.ingest(new ByteArrayInputStream(combatLog))).isEqualTo(matchId);
+
+            // an appended match no longer holds the uploaded log
+            assertThat(liveIngestionService.append(matchId, new ByteArrayInputStream(new byte[0]), true)).isTrue();
+            Long reingested = combatLogParserService.ingest(new ByteArrayInputStream(combatLog));
+            assertThat(reingested).isNotEqualTo(matchId);
+            assertThat(combatLogParserService.parseAndSave(new ByteArrayInputStream(combatLog)))
+                    .isNotEqualTo(reingested);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void appendsLiveSegments() throws Exception {
+        byte[] combatLog = IOUtils.resourceToByteArray(COMBATLOG_FILE_1);
+        Long expectedId = combatLogParserService.parseAndSave(new ByteArrayInputStream(combatLog));
+        NameDictionary names = new NameDictionary();
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(names);
+        LiveIngestionService columnarLiveService = new LiveIngestionService(
+                columnarStore, new CombatLogLineParser(names), new MatchUpdatePublisher(new StreamProperties()),
+                new IngestionProperties(), leaderboards(columnarStore));
+
+        long jpaMatchId = liveIngestionService.start();
+        long columnarMatchId = columnarLiveService.start();
+        // segments cut in the middle of lines, the last one without a trailing line end
+        int segmentSize = 7919;
+        int length = combatLog.length - 1;
+        for (int from = 0; from < length; from += segmentSize) {
+            int to = Math.min(from + segmentSize, length);
+            boolean complete = to == length;
+            assertThat(liveIngestionService.append(jpaMatchId,
+                    new ByteArrayInputStream(combatLog, from, to - from), complete)).isTrue();
+            assertThat(columnarLiveService.append(columnarMatchId,
+                    new ByteArrayInputStream(combatLog, from, to - from), complete)).isTrue();
+        }
+
+        List<HeroKills> heroKills = matchService.getHeroKills(expectedId).orElseThrow();
+        assertThat(matchService.getHeroKills(jpaMatchId)).contains(heroKills);
+        assertThat(columnarStore.getHeroKills(columnarMatchId)).contains(heroKills);
+        for (HeroKills hero : heroKills) {
+            String heroName = hero.getHero();
+            List<HeroItem> items = matchService.getHeroItems(expectedId, heroName).orElseThrow();
+            List<HeroSpells> spells = matchService.getHeroSpells(expectedId, heroName).orElseThrow();
+            List<HeroDamage> damage = matchService.getHeroDamages(expectedId, heroName).orElseThrow();
+            assertThat(matchService.getHeroItems(jpaMatchId, heroName)).contains(items);
+            assertThat(matchService.getHeroSpells(jpaMatchId, heroName)).contains(spells);
+            assertThat(matchService.getHeroDamages(jpaMatchId, heroName)).contains(damage);
+            assertThat(columnarStore.getHeroItems(columnarMatchId, heroName)).contains(items);
+            assertThat(columnarStore.getHeroSpells(columnarMatchId, heroName)).contains(spells);
+            assertThat(columnarStore.getHeroDamages(columnarMatchId, heroName)).contains(damage);
+        }
+        assertThat(liveIngestionService.append(-1L, new ByteArrayInputStream(combatLog), false)).isFalse();
+    }
+
+    @Test
+    void skipsOverlongLiveLinesAndKeepsNoStateForIdleMatches() throws Exception {
+        NameDictionary names = new NameDictionary();
+        ColumnarMatchStore columnarStore = new ColumnarMatchStore(names);
+        IngestionProperties properties = new IngestionProperties();
+        properties.setMaxLineLength(100);
+        MatchUpdatePublisher publisher = new MatchUpdatePublisher(new StreamProperties());
+        LiveIngestionService columnarLiveService = new LiveIngestionService(columnarStore,
+                new CombatLogLineParser(names), publisher, properties, leaderboards(columnarStore));
+        String line = "[00:00:01.000] npc_dota_hero_mars buys item item_tango\n";
+        long matchId = columnarLiveService.start();
+
+        // a line without end, split over segments and far longer than the limit, is skipped up to its end
+        String overlong = "[00:00:02.000] npc_dota_hero_mars buys item " + "x".repeat(10_000);
+        for (String segment : List.of(line + overlong, overlong, overlong + "\n" + line.substring(0, 20))) {
+            assertThat(columnarLiveService.append(matchId, segment(segment), false)).isTrue();
+        }
+        assertThat(columnarLiveService.trackedMatches()).isEqualTo(1);
+        assertThat(columnarLiveService.append(matchId, segment(line.substring(20)), false)).isTrue();
+        assertThat(columnarStore.getHeroItems(matchId, "mars"))
+                .contains(List.of(new HeroItem("tango", 1000L), new HeroItem("tango", 1000L)));
+        assertThat(columnarLiveService.trackedMatches()).isZero();
+
+        // subscribing to a match that is not being appended to keeps no state once subscribed
+        MatchUpdatePublisher.MatchSubscriber subscriber = new MatchUpdatePublisher.MatchSubscriber() {
+            @Override
+            public void send(String event, Object data) {
+            }
+
+            @Override
+            public void complete() {
+            }
+        };
+        for (int i = 0; i < 3; i++) {
+            columnarLiveService.subscribe(matchId, subscriber).orElseThrow().cancel();
+        }
+        assertThat(columnarLiveService.subscribe(-1L, subscriber)).isEmpty();
+        assertThat(columnarLiveService.trackedMatches()).isZero();
+        publisher.shutdown();
+    }
+
+    private static CombatLogEventSource events(CombatLogLineParser lineParser, List<String> lines) {
+        return consumer -> {
+            CombatLogEvent event = new CombatLogEvent();
+            for (String line : lines) {
+                if (lineParser.parse(line, event)) {
+                    consumer.accept(event);
+                }
+            }
+        };
+    }
+
+    private static InputStream segment(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void deletesMatches() throws Exception {
+        Long matchId = combatLogParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_2));
+        long rowsBefore = combatLogEntryRepository.count();
+
+        assertThat(matchService.deleteMatch(matchId)).isTrue();
+
+        assertThat(combatLogEntryRepository.count()).isEqualTo(rowsBefore - 3627);
+        assertThat(matchService.getHeroKills(matchId)).isEmpty();
+        assertThat(matchService.getHeroSpells(matchId, "centaur")).isEmpty();
+        assertThat(matchService.deleteMatch(matchId)).isFalse();
+    }
+
+    @Test
+    void readsHeroStatisticsWithOneQueryAndNoEntities() throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Long matchId = combatLogParserService.parseAndSave(getClass().getResourceAsStream(COMBATLOG_FILE_1));
+
+        statistics.clear();
+        matchService.getHeroKills(matchId);
+        matchService.getHeroItems(matchId, "mars");
+        matchService.getHeroSpells(matchId, "mars");
+        matchService.getHeroDamages(matchId, "mars");
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(4);
+        assertThat(statistics.getConnectCount()).isEqualTo(4);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(statistics.getCollectionLoadCount()).isZero();
+    }
+
+    /**
+     * Leaderboards of a store of its own, so its matches do not count in the leaderboards of the application.
+     */
+    private LeaderboardService leaderboards(MatchStore store) {
+        return new LeaderboardService(store, new SnapshotProperties());
+    }
+
+    private LiveIngestionService liveIngestion(MatchStore store, NameDictionary names, LeaderboardService leaderboards) {
+        return new LiveIngestionService(store, new CombatLogLineParser(names),
+                new MatchUpdatePublisher(new StreamProperties()), new IngestionProperties(), leaderboards);
+    }
+}
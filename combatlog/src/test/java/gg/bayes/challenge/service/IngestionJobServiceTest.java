@@ -0,0 +1,80 @@
+package gg.bayes.challenge.service;
+
+import gg.bayes.challenge.config.IngestionProperties;
+import gg.bayes.challenge.rest.model.IngestionJob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+class IngestionJobServiceTest {
+
+    private final CombatLogParserService combatLogParserService = Mockito.mock(CombatLogParserService.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private IngestionJobService ingestionJobService;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        ingestionJobService.shutdown();
+    }
+
+    @Test
+    void refusesUploadsWhenTheQueueIsFull() throws Exception {
+        IngestionProperties properties = new IngestionProperties();
+        properties.setWorkers(1);
+        properties.setQueueCapacity(1);
+        ingestionJobService = new IngestionJobService(combatLogParserService, properties);
+        CountDownLatch started = new CountDownLatch(1);
+        when(combatLogParserService.ingest(any(Path.class))).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return 42L;
+        });
+
+        IngestionJob running = ingestionJobService.submit(combatLog());
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        IngestionJob queued = ingestionJobService.submit(combatLog());
+        assertThatThrownBy(() -> ingestionJobService.submit(combatLog()))
+                .isInstanceOf(RejectedExecutionException.class);
+
+        assertThat(ingestionJobService.getJob(running.getId()).orElseThrow().getStatus())
+                .isEqualTo(IngestionJob.Status.RUNNING);
+        assertThat(ingestionJobService.getJob(queued.getId()).orElseThrow().getStatus())
+                .isEqualTo(IngestionJob.Status.QUEUED);
+
+        release.countDown();
+        ingestionJobService.shutdown();
+        assertThat(ingestionJobService.getJob(queued.getId()).orElseThrow())
+                .isEqualTo(new IngestionJob(queued.getId(), IngestionJob.Status.DONE, 42L, null));
+    }
+
+    @Test
+    void reportsFailedJobs() throws Exception {
+        ingestionJobService = new IngestionJobService(combatLogParserService, new IngestionProperties());
+        when(combatLogParserService.ingest(any(Path.class))).thenThrow(new IllegalArgumentException("Combat log is empty"));
+
+        IngestionJob job = ingestionJobService.submit(combatLog());
+        ingestionJobService.shutdown();
+
+        assertThat(ingestionJobService.getJob(job.getId()).orElseThrow())
+                .isEqualTo(new IngestionJob(job.getId(), IngestionJob.Status.FAILED, null, "Combat log is empty"));
+    }
+
+    private static InputStream combatLog() {
+        String line = "[00:00:01.000] npc_dota_hero_mars buys item item_tango";
+        return new ByteArrayInputStream(line.getBytes(StandardCharsets.UTF_8));
+    }
+}
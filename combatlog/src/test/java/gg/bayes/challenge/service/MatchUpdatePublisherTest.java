@@ -0,0 +1,95 @@
+package gg.bayes.challenge.service;
+
+import gg.bayes.challenge.config.StreamProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MatchUpdatePublisherTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private MatchUpdatePublisher publisher;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        publisher.shutdown();
+    }
+
+    @Test
+    void coalescesDeltasWhileASubscriberIsBusy() throws Exception {
+        StreamProperties properties = new StreamProperties();
+        properties.setInterval(Duration.ZERO);
+        publisher = new MatchUpdatePublisher(properties);
+        BlockingQueue<Object[]> received = new LinkedBlockingQueue<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        publisher.subscribe(1L, new MatchUpdatePublisher.MatchSubscriber() {
+            @Override
+            public void send(String event, Object data) {
+                received.add(new Object[]{event, data});
+                // a slow client, stuck on its first update
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void complete() {
+                completed.countDown();
+            }
+        }, kills("mars", 1));
+
+        Object[] snapshot = received.poll(5, TimeUnit.SECONDS);
+        assertThat(snapshot).isNotNull();
+        assertThat(snapshot[0]).isEqualTo("snapshot");
+        for (int i = 0; i < 100; i++) {
+            publisher.publish(1L, kills(i % 2 == 0 ? "mars" : "bane", 1));
+        }
+        publisher.complete(1L);
+        release.countDown();
+
+        assertThat(completed.await(5, TimeUnit.SECONDS)).isTrue();
+        Object[] delta = received.poll();
+        assertThat(delta[0]).isEqualTo("delta");
+        assertThat(((MatchDelta) delta[1]).getKills()).isEqualTo(Map.of("bane", 50, "mars", 50));
+        assertThat(received.poll()[0]).isEqualTo("complete");
+        assertThat(received).isEmpty();
+        assertThat(publisher.hasSubscribers(1L)).isFalse();
+    }
+
+    @Test
+    void dropsSubscribersThatFail() throws Exception {
+        publisher = new MatchUpdatePublisher(new StreamProperties());
+        CountDownLatch completed = new CountDownLatch(1);
+        publisher.subscribe(1L, new MatchUpdatePublisher.MatchSubscriber() {
+            @Override
+            public void send(String event, Object data) {
+                throw new IllegalStateException("client is gone");
+            }
+
+            @Override
+            public void complete() {
+                completed.countDown();
+            }
+        }, new MatchDelta());
+
+        assertThat(completed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(publisher.hasSubscribers(1L)).isFalse();
+    }
+
+    private static MatchDelta kills(String hero, int kills) {
+        MatchDelta delta = new MatchDelta();
+        delta.addKills(hero, kills);
+        return delta;
+    }
+}
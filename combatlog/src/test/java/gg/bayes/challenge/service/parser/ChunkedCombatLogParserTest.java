@@ -0,0 +1,77 @@
+package gg.bayes.challenge.service.parser;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkedCombatLogParserTest {
+
+    private final CombatLogLineParser lineParser = new CombatLogLineParser(new NameDictionary());
+
+    @ParameterizedTest
+    @ValueSource(strings = {"/data/combatlog_1.log.txt", "/data/combatlog_2.log.txt"})
+    void producesTheSameEventsAsTheSequentialParser(String file) throws IOException {
+        String combatLog = IOUtils.resourceToString(file, StandardCharsets.UTF_8);
+        List<String> expected = parseSequentially(combatLog);
+        assertThat(expected).hasSizeGreaterThan(3000);
+
+        // small chunks, so that both logs are split many times and lines end up at every possible chunk boundary
+        for (int chunkSize : new int[]{1, 100, 4096, 1 << 20}) {
+            try (ChunkedCombatLogParser parser = new ChunkedCombatLogParser(lineParser, 4, chunkSize)) {
+                assertThat(parseChunked(parser, combatLog)).as("chunk size %d", chunkSize).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void handlesAllLineEnds() throws IOException {
+        String combatLog = "[00:08:46.693] npc_dota_hero_snapfire buys item item_clarity\r\n"
+                + "[00:11:17.489] npc_dota_hero_snapfire is killed by npc_dota_hero_mars\r"
+                + "[00:12:01.000] npc_dota_hero_mars buys item item_tango\n"
+                + "[00:12:02.000] npc_dota_hero_mars buys item item_ward_observer";
+        try (ChunkedCombatLogParser parser = new ChunkedCombatLogParser(lineParser, 2, 16)) {
+            assertThat(parseChunked(parser, combatLog)).isEqualTo(parseSequentially(combatLog)).hasSize(4);
+        }
+    }
+
+    @Test
+    void reportsBlankLogs() throws IOException {
+        try (ChunkedCombatLogParser parser = new ChunkedCombatLogParser(lineParser, 2, 16)) {
+            assertThat(parser.parse(new ByteArrayInputStream(" \n\n \r\n".getBytes(StandardCharsets.UTF_8)),
+                    event -> { })).isFalse();
+        }
+    }
+
+    private List<String> parseSequentially(String combatLog) {
+        List<String> events = new ArrayList<>();
+        CombatLogEvent event = new CombatLogEvent();
+        for (String line : combatLog.split("\\r\\n|\\r|\\n")) {
+            if (lineParser.parse(line, event)) {
+                events.add(describe(event));
+            }
+        }
+        return events;
+    }
+
+    private static List<String> parseChunked(ChunkedCombatLogParser parser, String combatLog) throws IOException {
+        List<String> events = new ArrayList<>();
+        parser.parse(new ByteArrayInputStream(combatLog.getBytes(StandardCharsets.UTF_8)),
+                event -> events.add(describe(event)));
+        return events;
+    }
+
+    private static String describe(CombatLogEvent event) {
+        return String.join("|", String.valueOf(event.getTimestamp()), event.getType().name(), event.getActor(),
+                event.getTarget(), event.getAbility(), String.valueOf(event.getAbilityLevel()), event.getItem(),
+                String.valueOf(event.getDamage()));
+    }
+}
@@ -0,0 +1,143 @@
+package gg.bayes.challenge.service.parser;
+
+import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CombatLogLineParserTest {
+
+    private final CombatLogLineParser parser = new CombatLogLineParser(new NameDictionary());
+    private final CombatLogEvent event = new CombatLogEvent();
+
+    @Test
+    void parsesItemPurchase() {
+        assertThat(parser.parse("[00:08:46.693] npc_dota_hero_snapfire buys item item_clarity", event)).isTrue();
+        assertThat(event.getType()).isEqualTo(CombatLogEntryEntity.Type.ITEM_PURCHASED);
+        assertThat(event.getActor()).isEqualTo("snapfire");
+        assertThat(event.getItem()).isEqualTo("clarity");
+        assertThat(event.getTimestamp()).isEqualTo(526693L);
+    }
+
+    @Test
+    void internsNames() {
+        CombatLogEvent other = new CombatLogEvent();
+        assertThat(parser.parse("[00:11:17.489] npc_dota_hero_snapfire is killed by npc_dota_hero_mars", event)).isTrue();
+        assertThat(parser.parse("[00:12:01.000] npc_dota_hero_mars buys item item_clarity", other)).isTrue();
+        assertThat(other.getActor()).isSameAs(event.getActor());
+    }
+
+    @Test
+    void parsesHeroKillWithKillerAsActor() {
+        assertThat(parser.parse("[00:11:17.489] npc_dota_hero_snapfire is killed by npc_dota_hero_mars", event)).isTrue();
+        assertThat(event.getType()).isEqualTo(CombatLogEntryEntity.Type.HERO_KILLED);
+        assertThat(event.getActor()).isEqualTo("mars");
+        assertThat(event.getTarget()).isEqualTo("snapfire");
+    }
+
+    @Test
+    void parsesSpellCast() {
+        assertThat(parser.parse("[00:10:55.928] npc_dota_hero_bane casts ability bane_brain_sap (lvl 2) on npc_dota_hero_puck", event)).isTrue();
+        assertThat(event.getType()).isEqualTo(CombatLogEntryEntity.Type.SPELL_CAST);
+        assertThat(event.getActor()).isEqualTo("bane");
+        assertThat(event.getAbility()).isEqualTo("bane_brain_sap");
+        assertThat(event.getAbilityLevel()).isEqualTo(2);
+        assertThat(event.getTarget()).isEqualTo("puck");
+    }
+
+    @Test
+    void parsesSpellCastOnNonHeroTarget() {
+        assertThat(parser.parse("[00:10:41.998] npc_dota_hero_abyssal_underlord casts ability abyssal_underlord_firestorm (lvl 1) on dota_unknown", event)).isTrue();
+        assertThat(event.getAbility()).isEqualTo("abyssal_underlord_firestorm");
+        assertThat(event.getTarget()).isNull();
+    }
+
+    @Test
+    void parsesDamage() {
+        assertThat(parser.parse("[00:10:42.031] npc_dota_hero_bane hits npc_dota_hero_abyssal_underlord with dota_unknown for 51 damage (740->689)", event)).isTrue();
+        assertThat(event.getType()).isEqualTo(CombatLogEntryEntity.Type.DAMAGE_DONE);
+        assertThat(event.getActor()).isEqualTo("bane");
+        assertThat(event.getTarget()).isEqualTo("abyssal_underlord");
+        assertThat(event.getAbility()).isEqualTo("dota_unknown");
+        assertThat(event.getDamage()).isEqualTo(51);
+    }
+
+    @Test
+    void ignoresNonHeroEvents() {
+        assertThat(parser.parse("[00:00:04.999] game state is now 2", event)).isFalse();
+        assertThat(parser.parse("[00:09:07.521] npc_dota_hero_pangolier uses item_quelling_blade", event)).isFalse();
+        assertThat(parser.parse("[00:16:21.848] npc_dota_hero_pangolier is killed by npc_dota_badguys_tower2_mid", event)).isFalse();
+        assertThat(parser.parse("[00:24:55.089] npc_dota_neutral_mud_golem_split casts ability mud_golem_hurl_boulder (lvl 1) on npc_dota_hero_monkey_king", event)).isFalse();
+        assertThat(parser.parse("[00:10:42.031] npc_dota_hero_bane hits npc_dota_goodguys_tower1_top with dota_unknown for 51 damage (740->689)", event)).isFalse();
+        assertThat(parser.parse("", event)).isFalse();
+        assertThat(event.getType()).isNull();
+    }
+
+    @Test
+    void decodesTimestampAsMillisecondsSinceMatchStart() {
+        assertThat(TimestampDecoder.decode("[00:00:00.000] game state is now 2")).isZero();
+        assertThat(TimestampDecoder.decode("[01:02:03.004]")).isEqualTo(3723004L);
+        assertThat(TimestampDecoder.decode("[00:08:46.693]")).isEqualTo(526693L);
+    }
+
+    @Test
+    void rejectsMalformedTimestamps() {
+        assertThat(TimestampDecoder.decode("[0:08:46.693] x")).isEqualTo(TimestampDecoder.MALFORMED);
+        assertThat(TimestampDecoder.decode("[00:61:46.693]")).isEqualTo(TimestampDecoder.MALFORMED);
+        assertThat(TimestampDecoder.decode("[00:08:4a.693]")).isEqualTo(TimestampDecoder.MALFORMED);
+        assertThat(TimestampDecoder.decode("00:08:46.693 npc")).isEqualTo(TimestampDecoder.MALFORMED);
+
+        long rejected = parser.getRejectedLineCount();
+        assertThat(parser.parse("[0:08:46.693] npc_dota_hero_snapfire buys item item_clarity", event)).isFalse();
+        assertThat(parser.parse("[00:08:46] npc_dota_hero_snapfire buys item item_clarity", event)).isFalse();
+        assertThat(parser.getRejectedLineCount()).isEqualTo(rejected + 2);
+    }
+
+    @Test
+    void countsLines() {
+        parser.parse("[00:08:46.693] npc_dota_hero_snapfire buys item item_clarity", event);
+        parser.parse("[00:08:46.693] npc_dota_observer_wards buys item item_clarity", event);
+        parser.parse("[0:08:46.693] npc_dota_hero_snapfire buys item item_clarity", event);
+        parser.parse("", event);
+
+        assertThat(parser.getLineCount()).isEqualTo(4);
+        assertThat(parser.getEventCount(CombatLogEntryEntity.Type.ITEM_PURCHASED)).isEqualTo(1);
+        assertThat(parser.getEventCount(CombatLogEntryEntity.Type.DAMAGE_DONE)).isZero();
+        assertThat(parser.getRejectedLineCount()).isEqualTo(1);
+        assertThat(parser.getSkippedLineCount()).isEqualTo(2);
+    }
+
+    @Test
+    void classifiesSampleLog() throws Exception {
+        String log = IOUtils.resourceToString("/data/combatlog_1.log.txt", StandardCharsets.UTF_8);
+        Map<CombatLogEntryEntity.Type, Integer> counts = new EnumMap<>(CombatLogEntryEntity.Type.class);
+        for (String line : log.split("\\r?\\n")) {
+            if (parser.parse(line, event)) {
+                counts.merge(event.getType(), 1, Integer::sum);
+            }
+        }
+        assertThat(counts.get(CombatLogEntryEntity.Type.ITEM_PURCHASED))
+                .isEqualTo(countLines(log, "^\\[[^]]+] npc_dota_hero_\\S+ buys item item_.*"));
+        assertThat(counts.get(CombatLogEntryEntity.Type.HERO_KILLED))
+                .isEqualTo(countLines(log, "^\\[[^]]+] npc_dota_hero_\\S+ is killed by npc_dota_hero_.*"));
+        assertThat(counts.get(CombatLogEntryEntity.Type.SPELL_CAST))
+                .isEqualTo(countLines(log, "^\\[[^]]+] npc_dota_hero_\\S+ casts ability .*"));
+        assertThat(counts.get(CombatLogEntryEntity.Type.DAMAGE_DONE))
+                .isEqualTo(countLines(log, "^\\[[^]]+] npc_dota_hero_\\S+ hits npc_dota_hero_\\S+ with \\S+ for \\d+ damage.*"));
+    }
+
+    private static int countLines(String log, String regex) {
+        int count = 0;
+        for (String line : log.split("\\r?\\n")) {
+            if (line.matches(regex)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,66 @@
+package gg.bayes.challenge.service.store;
+
+import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
+import gg.bayes.challenge.rest.model.HeroKills;
+import gg.bayes.challenge.service.parser.CombatLogEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs on a database and a connection pool of its own, so the pool can be exhausted by the test alone.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:dota-names;DB_CLOSE_ON_EXIT=FALSE",
+        "spring.datasource.hikari.maximum-pool-size=2",
+        "spring.datasource.hikari.connection-timeout=2000"
+})
+class JpaMatchStoreTest {
+    private static final int POOL_SIZE = 2;
+
+    @Autowired
+    private JpaMatchStore matchStore;
+
+    @Test
+    void storesNewNamesWhileEveryPooledConnectionIsInUse() throws Exception {
+        // every ingestion holds a connection when it reaches its first new name
+        CyclicBarrier allInTransaction = new CyclicBarrier(POOL_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(POOL_SIZE);
+        try {
+            List<Future<Long>> saves = new ArrayList<>();
+            for (int i = 0; i < POOL_SIZE; i++) {
+                String hero = "new_hero_" + i;
+                saves.add(executor.submit(() -> matchStore.save(consumer -> {
+                    try {
+                        allInTransaction.await(10, TimeUnit.SECONDS);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    CombatLogEvent event = new CombatLogEvent();
+                    event.setType(CombatLogEntryEntity.Type.HERO_KILLED);
+                    event.setTimestamp(1000);
+                    event.setActor(hero);
+                    event.setTarget(hero + "_victim");
+                    consumer.accept(event);
+                })));
+            }
+            for (int i = 0; i < POOL_SIZE; i++) {
+                long matchId = saves.get(i).get(30, TimeUnit.SECONDS);
+                assertThat(matchStore.getHeroKills(matchId)).contains(
+                        List.of(new HeroKills("new_hero_" + i, 1), new HeroKills("new_hero_" + i + "_victim", 0)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package gg.bayes.challenge.soak;
+
+import gg.bayes.challenge.service.CombatLogParserService;
+import gg.bayes.challenge.service.MatchService;
+import gg.bayes.challenge.support.CombatLogGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Ingests, queries and deletes thousands of generated matches and checks that the heap used after a full GC stays
+ * flat, i.e. that nothing is retained per match. Excluded from the default build, run it with
+ * <pre>
+ * mvn test -Psoak-test [-Dsoak.matches=2000] [-Dsoak.lines=6000] [-Ddota.store=columnar]
+ * </pre>
+ */
+@Slf4j
+@Tag("soak")
+@SpringBootTest
+class IngestionSoakTest {
+    private static final int MATCHES = Integer.getInteger("soak.matches", 2000);
+    private static final int LINES = Integer.getInteger("soak.lines", 6000);
+    private static final long MAX_HEAP_GROWTH = 32L * 1024 * 1024;
+
+    @Autowired
+    private CombatLogParserService combatLogParserService;
+
+    @Autowired
+    private MatchService matchService;
+
+    @Test
+    void heapStaysFlat() throws Exception {
+        CombatLogGenerator generator = new CombatLogGenerator(2024);
+        int sampleEvery = Math.max(1, MATCHES / 10);
+        List<Long> usedHeap = new ArrayList<>();
+        for (int i = 1; i <= MATCHES; i++) {
+            byte[] combatLog = generator.generate(LINES).getBytes(StandardCharsets.UTF_8);
+            Long matchId = combatLogParserService.parseAndSave(new ByteArrayInputStream(combatLog));
+            assertThat(matchService.getHeroKills(matchId).orElseThrow()).hasSize(10);
+            assertThat(matchService.deleteMatch(matchId)).isTrue();
+            if (i % sampleEvery == 0) {
+                usedHeap.add(usedHeapAfterGc());
+                log.info("{} matches ingested, {} MiB used", i, usedHeap.get(usedHeap.size() - 1) >> 20);
+            }
+        }
+
+        // the first samples include the warm up of caches, pools and the JIT
+        long baseline = usedHeap.get(Math.min(1, usedHeap.size() - 1));
+        assertThat(usedHeap.subList(Math.min(2, usedHeap.size()), usedHeap.size()))
+                .allSatisfy(used -> assertThat(used).isLessThan(baseline + MAX_HEAP_GROWTH));
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,136 @@
+package gg.bayes.challenge.support;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic combat logs in the format of the bundled samples. The output only depends on the seed, so a
+ * failing scale or soak run can be reproduced exactly.
+ * <p>
+ * Every call to {@link #generate(int)} produces one match: ten heroes drawn from a fixed pool fighting each other,
+ * creeps and towers, with damage, spell casts, item purchases and uses, heals, kills, modifier changes and game state
+ * lines, in roughly the proportions of the samples. Names come from fixed pools, so the number of distinct names does
+ * not grow with the number of matches.
+ */
+public final class CombatLogGenerator {
+    private static final String HERO = "npc_dota_hero_";
+    private static final String[] HEROES = {
+            "abyssal_underlord", "bane", "bloodseeker", "centaur", "death_prophet", "dragon_knight", "earthshaker",
+            "ember_spirit", "grimstroke", "gyrocopter", "keeper_of_the_light", "lycan", "mars", "monkey_king",
+            "pangolier", "puck", "rubick", "snapfire", "sniper", "viper"};
+    private static final String[] SKILLS = {"strike", "nova", "shield", "storm"};
+    private static final String[] ITEMS = {
+            "tango", "clarity", "flask", "quelling_blade", "magic_wand", "boots", "phase_boots", "power_treads",
+            "blink", "black_king_bar", "ward_observer", "ward_sentry", "tpscroll", "soul_ring", "bottle"};
+    private static final String[] CREEPS = {
+            "npc_dota_creep_goodguys_melee", "npc_dota_creep_goodguys_ranged", "npc_dota_creep_badguys_melee",
+            "npc_dota_creep_badguys_ranged", "npc_dota_goodguys_siege", "npc_dota_badguys_siege",
+            "npc_dota_neutral_harpy_scout", "npc_dota_neutral_centaur_khan"};
+    private static final String[] TOWERS = {
+            "npc_dota_goodguys_tower1_mid", "npc_dota_goodguys_tower2_top", "npc_dota_badguys_tower1_bot",
+            "npc_dota_badguys_tower2_mid"};
+
+    private final Random random;
+
+    public CombatLogGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param lines the number of lines of the match
+     * @return the combat log of a new match
+     */
+    public String generate(int lines) {
+        StringBuilder combatLog = new StringBuilder(lines * 80);
+        try {
+            write(combatLog, lines);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return combatLog.toString();
+    }
+
+    /**
+     * Writes the combat log of a new match.
+     *
+     * @param out   receives the log, one {@code \n} terminated line after the other
+     * @param lines the number of lines of the match
+     */
+    public void write(Appendable out, int lines) throws IOException {
+        List<String> pool = new ArrayList<>(List.of(HEROES));
+        Collections.shuffle(pool, random);
+        List<String> heroes = pool.subList(0, 10);
+        long timestamp = 4999;
+        for (int i = 0; i < lines; i++) {
+            timestamp += random.nextInt(400);
+            out.append(String.format("[%02d:%02d:%02d.%03d] ", timestamp / 3_600_000, timestamp / 60_000 % 60,
+                    timestamp / 1000 % 60, timestamp % 1000));
+            out.append(line(heroes)).append('\n');
+        }
+    }
+
+    private String line(List<String> heroes) {
+        String hero = HERO + pick(heroes);
+        int kind = random.nextInt(100);
+        if (kind < 25) {
+            return hit(hero, HERO + pick(heroes));
+        } else if (kind < 35) {
+            return hit(hero, pick(CREEPS));
+        } else if (kind < 45) {
+            return hit(pick(CREEPS), hero);
+        } else if (kind < 48) {
+            return hit(pick(TOWERS), hero);
+        } else if (kind < 60) {
+            String target = random.nextInt(3) == 0 ? "dota_unknown"
+                    : random.nextBoolean() ? pick(CREEPS) : HERO + pick(heroes);
+            return hero + " casts ability " + ability(hero) + " (lvl " + (1 + random.nextInt(4)) + ") on " + target;
+        } else if (kind < 65) {
+            return hero + " buys item item_" + pick(ITEMS);
+        } else if (kind < 70) {
+            return hero + " uses item_" + pick(ITEMS);
+        } else if (kind < 75) {
+            int health = 100 + random.nextInt(1500);
+            int heal = 1 + random.nextInt(150);
+            return hero + "'s " + ability(hero) + " heals " + hero + " for " + heal + " health (" + health + "->"
+                    + (health + heal) + ")";
+        } else if (kind < 81) {
+            return pick(CREEPS) + " is killed by " + (random.nextBoolean() ? hero : pick(CREEPS));
+        } else if (kind < 83) {
+            return hero + " is killed by " + HERO + pick(heroes);
+        } else if (kind < 84) {
+            return hero + " is killed by " + (random.nextBoolean() ? pick(TOWERS) : pick(CREEPS));
+        } else if (kind < 85) {
+            return pick(TOWERS) + " is killed by " + (random.nextBoolean() ? hero : pick(CREEPS));
+        } else if (kind < 92) {
+            return hero + " receives modifier_" + ability(hero) + " buff/debuff from " + HERO + pick(heroes);
+        } else if (kind < 99) {
+            return hero + " loses modifier_" + ability(hero) + " buff/debuff";
+        } else {
+            return "game state is now " + random.nextInt(10);
+        }
+    }
+
+    private String hit(String actor, String target) {
+        String ability = actor.startsWith(HERO) && random.nextBoolean() ? ability(actor) : "dota_unknown";
+        int health = 100 + random.nextInt(2000);
+        int damage = 1 + random.nextInt(300);
+        return actor + " hits " + target + " with " + ability + " for " + damage + " damage (" + health + "->"
+                + Math.max(0, health - damage) + ")";
+    }
+
+    private String ability(String hero) {
+        return hero.substring(HERO.length()) + "_" + pick(SKILLS);
+    }
+
+    private String pick(List<String> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,44 @@
+package gg.bayes.challenge.support;
+
+import gg.bayes.challenge.persistence.model.CombatLogEntryEntity;
+import gg.bayes.challenge.service.parser.CombatLogEvent;
+import gg.bayes.challenge.service.parser.CombatLogLineParser;
+import gg.bayes.challenge.service.parser.NameDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CombatLogGeneratorTest {
+
+    @Test
+    void generatesTheSameLogForTheSameSeed() {
+        assertThat(new CombatLogGenerator(7).generate(1000)).isEqualTo(new CombatLogGenerator(7).generate(1000));
+        assertThat(new CombatLogGenerator(7).generate(1000)).isNotEqualTo(new CombatLogGenerator(8).generate(1000));
+    }
+
+    @Test
+    void generatesParsableLogsWithAllEventTypes() {
+        String combatLog = new CombatLogGenerator(42).generate(20_000);
+        String[] lines = combatLog.split("\n");
+        assertThat(lines).hasSize(20_000);
+
+        CombatLogLineParser parser = new CombatLogLineParser(new NameDictionary());
+        CombatLogEvent event = new CombatLogEvent();
+        Map<CombatLogEntryEntity.Type, Integer> counts = new EnumMap<>(CombatLogEntryEntity.Type.class);
+        long previousTimestamp = 0;
+        for (String line : lines) {
+            if (parser.parse(line, event)) {
+                counts.merge(event.getType(), 1, Integer::sum);
+                assertThat(event.getTimestamp()).isGreaterThanOrEqualTo(previousTimestamp);
+                previousTimestamp = event.getTimestamp();
+            }
+        }
+        assertThat(parser.getRejectedLineCount()).isZero();
+        assertThat(counts).containsOnlyKeys(CombatLogEntryEntity.Type.values());
+        // about half of the lines are hero events, the rest are creeps, towers and noise
+        assertThat(counts.values().stream().mapToInt(Integer::intValue).sum()).isBetween(8_000, 14_000);
+    }
+}